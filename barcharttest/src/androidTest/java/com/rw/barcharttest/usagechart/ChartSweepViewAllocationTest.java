@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.barcharttest.usagechart;
+
+import java.util.Calendar;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.rw.barcharttest.R;
+
+/**
+ * Drives scripted drags, of a time sweep and of the chart viewport, drawing the
+ * whole chart after every move, and checks that the frames allocate nothing
+ * once caches are warm.
+ *
+ * The sweep drag stays within one day, so the label text never changes;
+ * rebuilding it when a day boundary is crossed goes through the framework's
+ * text layout and isn't part of the per-frame path.  The pan crosses days
+ * freely, but keeps both sweeps inside the viewport so their values hold.
+ */
+public class ChartSweepViewAllocationTest extends InstrumentationTestCase {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 600;
+
+    private static final int DAYS = 30;
+
+    private static final int WARM_UP_MOVES = 20;
+    private static final int COUNTED_MOVES = 120;
+
+    /** Largest distance dragged from the start, in pixels; well under a day. */
+    private static final int MAX_DRAG = 8;
+
+    /** The pan sways back and forth this far either side of the start, in pixels. */
+    private static final int MAX_PAN = 150;
+    private static final int PAN_STEP = 10;
+
+    /** Moves in one full sway of the pan, which warms up every position it visits. */
+    private static final int PAN_PERIOD = 4 * MAX_PAN / PAN_STEP;
+
+    private View mRoot;
+    private ChartDataUsageView mChart;
+    private ChartSweepView mSweep;
+    private ChartSweepView mSweepRight;
+    private Canvas mCanvas;
+    private long mStart;
+
+    private int mAllocations;
+    private final float[] mPoints = new float[COUNTED_MOVES];
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                setUpChart();
+            }
+        });
+    }
+
+    private void setUpChart() {
+        final Context context = getInstrumentation().getTargetContext();
+        mRoot = LayoutInflater.from(context).inflate(R.layout.fragment_data_usage, null);
+        mChart = (ChartDataUsageView) mRoot.findViewById(R.id.chart);
+        mSweep = (ChartSweepView) mRoot.findViewById(R.id.sweep_left);
+        mSweepRight = (ChartSweepView) mRoot.findViewById(R.id.sweep_right);
+
+        final Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2015, Calendar.MARCH, 1);
+        final ChartData data = new ChartData(DAYS);
+        for (int i = 0; i < DAYS; i++) {
+            data.addEntry(cal.getTimeInMillis(), (i % 7 + 1) * ChartConstants.MB_IN_BYTES);
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        mStart = data.getDate(0);
+        final long end = data.getDate(data.size() - 1);
+        data.setStart(mStart);
+        data.setEnd(end);
+
+        mChart.bindChartData(data);
+        mChart.setVisibleRange(mStart - DateUtils.DAY_IN_MILLIS / 2, end + DateUtils.DAY_IN_MILLIS);
+        layOut();
+        mCanvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+    }
+
+    private void layOut() {
+        mRoot.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mRoot.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    public void testDragAllocatesNothingPerFrame() throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Grab the sweep at its bottom edge, then sway back and forth to the right.
+                final float x = mSweep.getWidth() / 2f;
+                final float y = mSweep.getHeight() - 1;
+                final float[] moves = new float[WARM_UP_MOVES + COUNTED_MOVES];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = x + 1 + i % MAX_DRAG;
+                }
+                drag(mSweep, x, y, moves, WARM_UP_MOVES);
+            }
+        });
+
+        assertMoved("drag did not move the sweep");
+        assertEquals("allocations during " + COUNTED_MOVES + " drag frames", 0, mAllocations);
+    }
+
+    public void testPanAllocatesNothingPerFrame() throws Throwable {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Show two weeks in the middle of the data, leaving room to pan either
+                // way, with both sweeps well inside it.
+                final long day = DateUtils.DAY_IN_MILLIS;
+                mChart.setVisibleRange(mStart + 8 * day, mStart + 22 * day);
+                mSweep.setValue(mStart + 12 * day);
+                mSweepRight.setValue(mStart + 18 * day);
+                mChart.setActivated(true);
+                layOut();
+
+                // Sway the viewport MAX_PAN pixels either way, about two days.
+                final float x = mChart.getWidth() / 2f;
+                final float y = mChart.getHeight() / 2f;
+                final float[] moves = new float[PAN_PERIOD + COUNTED_MOVES];
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] = x + getPanOffset(i + 1);
+                }
+                drag(mChart, x, y, moves, PAN_PERIOD);
+            }
+        });
+
+        assertMoved("pan did not move the viewport");
+        assertEquals("allocations during " + COUNTED_MOVES + " pan frames", 0, mAllocations);
+    }
+
+    /**
+     * Triangle wave through 0, MAX_PAN, 0 and -MAX_PAN, in PAN_STEP steps.
+     */
+    private static int getPanOffset(int move) {
+        final int phase = (move * PAN_STEP) % (4 * MAX_PAN);
+        if (phase <= MAX_PAN) {
+            return phase;
+        } else if (phase <= 3 * MAX_PAN) {
+            return 2 * MAX_PAN - phase;
+        } else {
+            return phase - 4 * MAX_PAN;
+        }
+    }
+
+    /**
+     * Press the target at the given point and move it horizontally through each of
+     * the x positions a frame apart, drawing after every move and counting
+     * allocations past the warm-up, then lift.  Events are obtained up front.
+     */
+    private void drag(View target, float x, float y, float[] moveXs, int warmUp) {
+        final long downTime = SystemClock.uptimeMillis();
+        final MotionEvent down = MotionEvent.obtain(downTime, downTime,
+                MotionEvent.ACTION_DOWN, x, y, 0);
+        final MotionEvent[] moves = new MotionEvent[moveXs.length];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = MotionEvent.obtain(downTime, downTime + (i + 1) * 16,
+                    MotionEvent.ACTION_MOVE, moveXs[i], y, 0);
+        }
+        final MotionEvent up = MotionEvent.obtain(downTime, downTime + (moves.length + 1) * 16,
+                MotionEvent.ACTION_UP, moveXs[moves.length - 1], y, 0);
+        try {
+            assertTrue("target rejected the drag", target.onTouchEvent(down));
+            mChart.draw(mCanvas);
+
+            // Let buffers and caches reach their steady size before counting.
+            for (int i = 0; i < warmUp; i++) {
+                frame(target, moves[i]);
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for (int i = 0; i < COUNTED_MOVES; i++) {
+                frame(target, moves[warmUp + i]);
+                mPoints[i] = mSweep.getPoint();
+            }
+            Debug.stopAllocCounting();
+            mAllocations = Debug.getThreadAllocCount();
+
+            target.onTouchEvent(up);
+        } finally {
+            down.recycle();
+            for (MotionEvent move : moves) {
+                move.recycle();
+            }
+            up.recycle();
+        }
+    }
+
+    private void frame(View target, MotionEvent move) {
+        target.onTouchEvent(move);
+        mChart.draw(mCanvas);
+    }
+
+    private void assertMoved(String message) {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (float point : mPoints) {
+            min = Math.min(min, point);
+            max = Math.max(max, point);
+        }
+        assertTrue(message, min < max);
+    }
+}
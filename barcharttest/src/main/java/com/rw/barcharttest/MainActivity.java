@@ -27,21 +27,16 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.rw.barcharttest.usagechart.ChartData;
-import com.rw.barcharttest.usagechart.ChartData.Entry;
 import com.rw.barcharttest.usagechart.ChartDataUsageView;
 import com.rw.barcharttest.usagechart.ChartDataUsageView.DataUsageChartListener;
+import com.rw.barcharttest.usagechart.DayLabelFormatter;
 import com.rw.barcharttest.utils.StringUtils;
 
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Random;
 
 public class MainActivity extends FragmentActivity {
 
-	private static SimpleDateFormat sDateFormatter = new SimpleDateFormat("MMM dd");
-
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
@@ -69,24 +64,20 @@ public class MainActivity extends FragmentActivity {
 			cal.set(Calendar.MILLISECOND, 0);
 			cal.add(Calendar.MONTH, -1);
 			
-			// Generate some quick dummy data and bind it to our chart.
+			// Generate some quick dummy data and load it into the chart data object.
 			Random random = new Random();
-			List<Entry> list = new ArrayList<Entry>(30);
+			ChartData data = new ChartData(30);
 			for (int i = 0; i < 30; i++) {
-				Entry entry = new Entry();
-				entry.date = cal.getTimeInMillis();
+				long date = cal.getTimeInMillis();
 				cal.add(Calendar.DAY_OF_MONTH, 1);
 				// Random number of megabytes used for the day.
-				entry.totalBytes = (random.nextInt(1000) + 1) * 1024 * 2; 
-				list.add(entry);
+				long totalBytes = (random.nextInt(1000) + 1) * 1024 * 2; 
+				data.addEntry(date, totalBytes);
 			}
 			
-			long start = list.get(0).date;
-			long end = list.get(list.size() - 1).date;
+			long start = data.getDate(0);
+			long end = data.getDate(data.size() - 1);
 			
-			// Load the chart data object.
-			ChartData data = new ChartData();
-			data.addEntries(list);
 			data.setStart(start);
 			data.setEnd(end);
 			
@@ -116,14 +107,11 @@ public class MainActivity extends FragmentActivity {
 		        	long start = chart.getInspectStart();
 		        	long end = chart.getInspectEnd();
 
-					String startStr = sDateFormatter.format(start);
-					String endStr = sDateFormatter.format(end);
+					final DayLabelFormatter formatter = DayLabelFormatter.getInstance();
+					String startStr = formatter.format(start);
+					String endStr = formatter.format(end);
 
-		        	long totalUsage = 0;
-		        	List<Entry> selectedEntries = chart.getChartData().getEntries(start, end);
-		        	for (Entry entry : selectedEntries) {
-		        		totalUsage += entry.totalBytes;
-		        	}
+		        	long totalUsage = chart.getChartData().sum(start, end);
 
 					summary.setText(getString(R.string.data_usage_between, startStr, endStr,
 							StringUtils.humanReadableByteCount(totalUsage, true)));
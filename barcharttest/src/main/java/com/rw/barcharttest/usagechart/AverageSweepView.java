@@ -32,6 +32,7 @@ public class AverageSweepView extends ChartSweepView {
 	private final static boolean DEBUG = false;
 	
 	private Drawable icon;
+	private final float iconPadding;
 	
 	public AverageSweepView(Context context) {
         this(context, null);
@@ -44,6 +45,9 @@ public class AverageSweepView extends ChartSweepView {
     public AverageSweepView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
         icon = context.getResources().getDrawable(R.drawable.ic_info);
+
+        // Put some space between the icon and the sweep line.
+        iconPadding = context.getResources().getDisplayMetrics().density * 25;
     }
     
     @Override
@@ -61,9 +65,7 @@ public class AverageSweepView extends ChartSweepView {
         	int iconHeight = icon.getIntrinsicHeight();
         	int iconWidth = icon.getIntrinsicWidth();
         	
-        	// Put some space between the icon and the sweep line.
-        	float padding = getResources().getDisplayMetrics().density * 25;
-        	int x = (int) -padding;
+        	int x = (int) -iconPadding;
         	int y = (int) (getHeight() / 2) - ((iconHeight / 2));
 
             icon.setBounds(x, y, x + iconWidth, y + iconHeight);
@@ -32,6 +32,17 @@ public interface ChartAxis {
 
     /** Convert raw value into screen point. */
     public float convertToPoint(long value);
+    /**
+     * Convert raw values {@code values[from, to)} into screen points, writing
+     * them to {@code out} starting at index 0.
+     */
+    public void convertToPoints(long[] values, int from, int to, float[] out);
+    /**
+     * Return a stamp that changes whenever {@link #setBounds(long, long)} or
+     * {@link #setSize(float)} change the mapping, for keying cached points.
+     */
+    public int getVersion();
+
     /** Convert screen point into raw value. */
     public long convertToValue(float point);
 
@@ -41,8 +52,24 @@ public interface ChartAxis {
      */
     public long buildLabel(Resources res, SpannableStringBuilder builder, long value);
 
-    /** Return list of tick points for drawing a grid. */
-    public float[] getTickPoints();
+    /**
+     * Return the value {@link #buildLabel(Resources, SpannableStringBuilder, long)}
+     * would return for the given raw value, without building the label.
+     */
+    public long roundLabelValue(long value);
+
+    /**
+     * Return the bucket of the given raw value; values in the same bucket build
+     * identical labels, so a label built for one of them can be kept.
+     */
+    public long getLabelBucket(long value);
+
+    /**
+     * Fill the given buffer with tick points for drawing a grid, and return the
+     * number of ticks.  When that exceeds the buffer length only the first ticks
+     * are written, so callers should grow the buffer and ask again.
+     */
+    public int getTickPoints(float[] out);
 
     /**
      * Test if given raw value should cause the axis to grow or shrink;
@@ -18,11 +18,12 @@ package com.rw.barcharttest.usagechart;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
-import android.graphics.Rect;
-import android.text.format.DateUtils;
+import android.graphics.Path;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.View;
@@ -36,6 +37,9 @@ public class ChartBarGraphView extends View {
     private static final String TAG = "ChartBarGraphView";
     private static final boolean LOGD = false;
 
+    /** Alpha applied to series colors outside of the selected area. */
+    private static final int UNSELECTED_SERIES_ALPHA = 0x66;
+
     private ChartAxis mHoriz;
     private ChartAxis mVert;
 
@@ -43,6 +47,9 @@ public class ChartBarGraphView extends View {
     private int mSelectedColor;
     private int mDefaultColor;
 
+    /** Color of each series when drawing stacked bars, from the bottom up. */
+    private int[] mSeriesColors;
+
     private ChartData mData;
 
     private long mStart;
@@ -50,8 +57,52 @@ public class ChartBarGraphView extends View {
 
     private long mPrimaryLeft;
     private long mPrimaryRight;
-    
-    private long mMax;
+
+    /*
+     * Bar geometry for the visible window, keyed on the data version and on both axis
+     * versions, so redraws for a selection change only read it.  Each bar is a rect
+     * snapped to pixels between its own edges, since buckets over gappy data and a
+     * partial last bucket differ in width.  Bars are added to one path per color,
+     * or per series when stacked, and mBarLeft and mBarRight keep their edges ordered
+     * left to right, so the selected bars are always one contiguous run.
+     */
+    private Path[] mBarPaths = { new Path() };
+    private int mBarPathCount;
+    private boolean mBarsStacked;
+    private float[] mBarLeft = new float[0];
+    private float[] mBarRight = new float[0];
+    private float[] mBarTop = new float[0];
+    private float[] mSegmentTop = new float[0];
+
+    // Raw values for the visible window, converted to points in bulk.
+    private long[] mStartTimes = new long[0];
+    private long[] mEndTimes = new long[0];
+    private long[] mTotals = new long[0];
+    private int mBarCount;
+    private float mMaxBarWidth;
+    private boolean mBarsDirty = true;
+    private int mBarsDataVersion;
+    private int mBarsHorizVersion;
+    private int mBarsVertVersion;
+
+    // Visible window of the cached geometry, as pyramid buckets at mBarsLevel.
+    private int mBarsLevel;
+    private int mBarsFirst;
+    private int mBarsLast = -1;
+    private final ChartData.Range mWindow = new ChartData.Range();
+
+    /*
+     * The bars rendered once in each color.  A frame blits the selected layer clipped
+     * to the selected run of bars and the default layer around it, so moving a sweep
+     * costs the same however many bars there are.  While the viewport pans or zooms
+     * the geometry changes every frame, so the bar paths are drawn directly with the
+     * same clips instead, and the layers are only rendered again once it settles.
+     */
+    private Bitmap mDefaultLayer;
+    private Bitmap mSelectedLayer;
+    private boolean mLayersDirty = true;
+    private boolean mViewportMoving;
+    private final Canvas mLayerCanvas = new Canvas();
 
     public ChartBarGraphView(Context context) {
         this(context, null, 0);
@@ -84,19 +135,78 @@ public class ChartBarGraphView extends View {
     }
 
     public void initPaint() {
-        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        // Bar edges are snapped to pixels, so anti-aliasing would only blur them.
+        mPaint = new Paint();
         mPaint.setColor(mSelectedColor);
-        mPaint.setStyle(Style.FILL_AND_STROKE);
+        mPaint.setStyle(Style.FILL);
+    }
+
+    /**
+     * Set the color of each series of multi-series data, from the bottom of the
+     * stack up.  Without colors the bars are drawn from the totals.
+     */
+    public void setSeriesColors(int... colors) {
+        mSeriesColors = colors;
+        if (mBarPaths.length < colors.length) {
+            mBarPaths = new Path[colors.length];
+            for (int i = 0; i < colors.length; i++) {
+                mBarPaths[i] = new Path();
+            }
+        }
+        invalidateBars();
     }
 
     public void bindChartData(ChartData data) {
     	mData = data;
-    	invalidate();
+    	invalidateBars();
     }
 
     public void setBounds(long start, long end) {
         mStart = start;
         mEnd = end;
+        invalidateBars();
+    }
+
+    /**
+     * Rebuild the bar geometry on the next draw.  Call after changing either axis.
+     */
+    void invalidateBars() {
+        mBarsDirty = true;
+        invalidate();
+    }
+
+    private boolean isBarCacheValid() {
+        return !mBarsDirty && mHoriz != null && mData != null
+                && mBarsDataVersion == mData.getVersion()
+                && mBarsHorizVersion == mHoriz.getVersion()
+                && mBarsVertVersion == mVert.getVersion();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mBarsDirty = true;
+        releaseLayers();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mBarsDirty = true;
+        releaseLayers();
+    }
+
+    /**
+     * Tell the view whether a pan, zoom or fling is in progress.  The layers are
+     * skipped while it is, and rendered on the first draw after it settles.
+     */
+    void setViewportMoving(boolean moving) {
+        if (mViewportMoving != moving) {
+            mViewportMoving = moving;
+            if (!moving) {
+                invalidate();
+            }
+        }
     }
 
     /**
@@ -104,19 +214,46 @@ public class ChartBarGraphView extends View {
      * area to be painted with {@link #mDefaultColor}.
      */
     public void setPrimaryRange(long left, long right) {
+        final long oldLeft = mPrimaryLeft;
+        final long oldRight = mPrimaryRight;
         mPrimaryLeft = left;
         mPrimaryRight = right;
-        invalidate();
+
+        if (!isBarCacheValid()) {
+            invalidate();
+            return;
+        }
+
+        // Only bars around the moved edges can change color.
+        if (oldLeft != left) {
+            invalidateStrip(mHoriz.convertToPoint(oldLeft), mHoriz.convertToPoint(left));
+        }
+        if (oldRight != right) {
+            invalidateStrip(mHoriz.convertToPoint(oldRight), mHoriz.convertToPoint(right));
+        }
+    }
+
+    /**
+     * Invalidate the full height strip between two points, widened by the widest
+     * bar on each side to cover bars straddling either point.
+     *
+     * Only software rendering honors the dirty rect.  Hardware accelerated
+     * windows, the default from API 14, redraw the whole view, so there a move
+     * costs the three clipped layer blits of a frame rather than a strip.
+     */
+    private void invalidateStrip(float a, float b) {
+        final float margin = mMaxBarWidth + 1;
+        final int left = (int) Math.floor(Math.min(a, b) - margin);
+        final int right = (int) Math.ceil(Math.max(a, b) + margin);
+        invalidate(left, 0, right, getHeight());
     }
 
+    /**
+     * Largest value within the visible range, available before the first
+     * draw so the vertical axis can be sized up front.
+     */
     public long getMaxVisible() {
-        final long maxVisible = mMax;
-        if (maxVisible <= 0 && mData != null) {
-            // haven't generated bars yet; fall back to raw data.
-            return mData.getVerticalMax();
-        } else {
-            return maxVisible;
-        }
+        return mData != null ? mData.getVerticalMax(mStart, mEnd) : 0;
     }
 
     @Override
@@ -132,56 +269,317 @@ public class ChartBarGraphView extends View {
     private void drawBarChart(Canvas canvas, float primaryLeftPoint, float primaryRightPoint) {
     	if (LOGD) Log.d(TAG, "drawBarChart()");
     	
+        final int width = getWidth();
+        final int height = getHeight();
+
         // Bail when not enough data to render.
-        if (mData == null) {
+        if (mData == null || mData.size() == 0 || width <= 0 || height <= 0) {
             return;
         }
 
-        mMax = 0;
+        final long barDuration = mData.getBucketDuration() / 2;
+        if (!isBarCacheValid()) {
+            updateWindow(width, barDuration);
+
+            // Multi-series data is only broken down at full resolution.
+            final boolean stacked = mSeriesColors != null && mData.getSeriesCount() > 1
+                    && mBarsLevel == 0;
+            if (mBarsLast < mBarsFirst) {
+                mBarCount = 0;
+            } else if (stacked) {
+                buildStackedBars(mBarsFirst, mBarsLast, barDuration);
+            } else {
+                buildBars(mData.getPyramid(), mBarsLevel, mBarsFirst, mBarsLast, barDuration);
+            }
+            mBarsStacked = stacked;
+            mLayersDirty = true;
+            mBarsDirty = false;
+            mBarsDataVersion = mData.getVersion();
+            mBarsHorizVersion = mHoriz.getVersion();
+            mBarsVertVersion = mVert.getVersion();
+        }
+        if (mBarCount == 0) {
+            return;
+        }
+
+        /*
+         * Draw bars.  Bars outside of the the selected area between the left and right
+         * sweeps are drawn differently to indicate that they aren't included.  Since the
+         * selected bars are contiguous, the selected color only needs one clip, taken
+         * from the edges of the outermost selected bars.
+         */
+        final int count = mBarCount;
+        final int selectedStart = findFirstBarAtOrAfter(primaryLeftPoint);
+        int selectedEnd = selectedStart;
+        while (selectedEnd < count && mBarRight[selectedEnd] <= primaryRightPoint) {
+            selectedEnd++;
+        }
+
+        float clipLeft = width;
+        float clipRight = width;
+        if (selectedEnd > selectedStart) {
+            clipLeft = (int) mBarLeft[selectedStart];
+            clipRight = getSnappedRight(selectedEnd - 1);
+        }
+
+        if (mViewportMoving) {
+            drawBars(canvas, false, 0, clipLeft);
+            drawBars(canvas, true, clipLeft, clipRight);
+            drawBars(canvas, false, clipRight, width);
+            return;
+        }
+        if (mLayersDirty || mDefaultLayer == null) {
+            renderLayers(width, height);
+            mLayersDirty = false;
+        }
+
+        drawLayer(canvas, mDefaultLayer, 0, clipLeft);
+        drawLayer(canvas, mSelectedLayer, clipLeft, clipRight);
+        drawLayer(canvas, mDefaultLayer, clipRight, width);
+    }
+
+    /**
+     * Cull to the entries whose bars intersect the pixel window [0, width], and pick
+     * the pyramid level to draw them from.
+     */
+    private void updateWindow(int width, long barDuration) {
+        // A bar covers [date, date + barDuration], so widen the window on the left by a bar.
+        final long windowStart = mHoriz.convertToValue(0) - barDuration;
+        final long windowEnd = mHoriz.convertToValue(width);
+        final ChartData.Range window = mData.getRange(windowStart, windowEnd, mWindow);
+        if (window.size() == 0) {
+            mBarsLevel = 0;
+            mBarsFirst = 0;
+            mBarsLast = -1;
+            mBarCount = 0;
+            return;
+        }
+        final int start = window.getFrom();
+        final int end = window.getTo() - 1;
+
+        /*
+         * When zoomed out far enough that several entries land on each pixel column,
+         * draw from a coarser level of the pyramid so the work is bounded by the width
+         * of the view rather than by the amount of data.  Level 0 is the raw data.
+         */
+        final ChartDataPyramid pyramid = mData.getPyramid();
+        mBarsLevel = pyramid.getLevelForDensity(end - start + 1, width);
+        mBarsFirst = pyramid.getBucket(mBarsLevel, start);
+        mBarsLast = pyramid.getBucket(mBarsLevel, end);
+    }
+
+    /**
+     * Draw the horizontal strip [left, right) of a layer.
+     */
+    private void drawLayer(Canvas canvas, Bitmap layer, float left, float right) {
+        if (right <= left) {
+            return;
+        }
+        final int count = canvas.save();
+        canvas.clipRect(left, 0, right, layer.getHeight());
+        canvas.drawBitmap(layer, 0, 0, null);
+        canvas.restoreToCount(count);
+    }
+
+    /**
+     * Draw the horizontal strip [left, right) of the bars straight from their paths.
+     */
+    private void drawBars(Canvas canvas, boolean selected, float left, float right) {
+        if (right <= left) {
+            return;
+        }
+        final int count = canvas.save();
+        canvas.clipRect(left, 0, right, getHeight());
+        drawBarPaths(canvas, selected);
+        canvas.restoreToCount(count);
+    }
+
+    /**
+     * Draw every bar path in its selected or default color.
+     */
+    private void drawBarPaths(Canvas canvas, boolean selected) {
+        for (int p = 0; p < mBarPathCount; p++) {
+            mPaint.setColor(getBarColor(p, selected));
+            canvas.drawPath(mBarPaths[p], mPaint);
+        }
+    }
+
+    private int getBarColor(int path, boolean selected) {
+        if (!mBarsStacked) {
+            return selected ? mSelectedColor : mDefaultColor;
+        }
+        final int color = mSeriesColors[path];
+        return selected ? color : (color & 0x00FFFFFF) | (UNSELECTED_SERIES_ALPHA << 24);
+    }
+
+    /**
+     * Render every bar into both layers, once in each color.
+     */
+    private void renderLayers(int width, int height) {
+        if (mDefaultLayer == null) {
+            mDefaultLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mSelectedLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+
+        renderLayer(mDefaultLayer, false);
+        renderLayer(mSelectedLayer, true);
+    }
+
+    private void renderLayer(Bitmap layer, boolean selected) {
+        layer.eraseColor(Color.TRANSPARENT);
+        mLayerCanvas.setBitmap(layer);
+        drawBarPaths(mLayerCanvas, selected);
+        mLayerCanvas.setBitmap(null);
+    }
+
+    private void releaseLayers() {
+        if (mDefaultLayer != null) {
+            mDefaultLayer.recycle();
+            mSelectedLayer.recycle();
+            mDefaultLayer = null;
+            mSelectedLayer = null;
+        }
+    }
+
+    /**
+     * Convert the visible buckets of the given pyramid level into bars.
+     */
+    private void buildBars(ChartDataPyramid pyramid, int level, int first, int last,
+            long barDuration) {
         final int height = getHeight();
-        
-        ChartData.Entry entry = null;
-
-        final Rect rect = new Rect();
-        final int start = mData.getIndexBefore(mStart);
-        final int end = mData.getIndexAfter(mEnd);
-        for (int i = start; i <= end; i++) {
-            entry = mData.getEntry(i);
-            mMax = Math.max(entry.totalBytes, mMax);
-            
-            final long startTime = entry.date;
-            final long endTime = startTime + (DateUtils.DAY_IN_MILLIS / 2);
-            
-            final float startX = mHoriz.convertToPoint(startTime);
-            final float endX = mHoriz.convertToPoint(endTime);
-            final float y = mVert.convertToPoint(entry.totalBytes);
-            
-            // skip until we find first data to show on screen
-            if (endX < 0) continue;
-            
-            // Set bar bounds
-            int left = (int) startX;
-            int top = (int) (y);
-            int right = (int) endX;
-            int bottom = height;
-            
-            rect.set(left, top, right, bottom);
-
-            /*
-             * Draw bar.  Bars outside of the the selected area between the left and right
-             * sweeps are drawn differently to indicate that they aren't included.
-             */
-            if (startX >= primaryLeftPoint && endX <= primaryRightPoint) {
-            	// Within the selected area.
-            	mPaint.setColor(mSelectedColor);
+        final int n = last - first + 1;
+        ensureBarCapacity(n);
+
+        for (int k = 0; k < n; k++) {
+            final int i = first + k;
+            mStartTimes[k] = pyramid.getStartDate(level, i);
+            mEndTimes[k] = pyramid.getEndDate(level, i) + barDuration;
+            mTotals[k] = pyramid.getMax(level, i);
+        }
+        mHoriz.convertToPoints(mStartTimes, 0, n, mBarLeft);
+        mHoriz.convertToPoints(mEndTimes, 0, n, mBarRight);
+        mVert.convertToPoints(mTotals, 0, n, mBarTop);
+        final int from = compactVisibleBars(n);
+
+        final Path path = mBarPaths[0];
+        path.rewind();
+        for (int k = 0; k < mBarCount; k++) {
+            path.addRect((int) mBarLeft[k], (int) mBarTop[from + k], getSnappedRight(k),
+                    height, Path.Direction.CW);
+        }
+        mBarPathCount = 1;
+    }
+
+    /**
+     * Convert the visible entries into a stack of series segments per bar, adding
+     * each segment to the path of its series.  Stacked totals are converted a
+     * series at a time, each series' tops being the bottoms of the next.
+     */
+    private void buildStackedBars(int first, int last, long barDuration) {
+        final int height = getHeight();
+        final int n = last - first + 1;
+        ensureBarCapacity(n);
+
+        for (int k = 0; k < n; k++) {
+            mStartTimes[k] = mData.getDate(first + k);
+            mEndTimes[k] = mStartTimes[k] + barDuration;
+        }
+        mHoriz.convertToPoints(mStartTimes, 0, n, mBarLeft);
+        mHoriz.convertToPoints(mEndTimes, 0, n, mBarRight);
+        final int from = first + compactVisibleBars(n);
+        final int count = mBarCount;
+
+        for (int k = 0; k < count; k++) {
+            mTotals[k] = 0;
+            mBarTop[k] = height;
+        }
+
+        // Stack the segments from the bottom up.
+        final int seriesCount = Math.min(mSeriesColors.length, mData.getSeriesCount());
+        for (int s = 0; s < seriesCount; s++) {
+            for (int k = 0; k < count; k++) {
+                mTotals[k] += mData.getSeriesBytes(s, from + k);
+            }
+            mVert.convertToPoints(mTotals, 0, count, mSegmentTop);
+
+            final Path path = mBarPaths[s];
+            path.rewind();
+            for (int k = 0; k < count; k++) {
+                final float top = (int) mSegmentTop[k];
+                if (top < mBarTop[k]) {
+                    path.addRect((int) mBarLeft[k], top, getSnappedRight(k), mBarTop[k],
+                            Path.Direction.CW);
+                }
+                mBarTop[k] = top;
+            }
+        }
+        mBarPathCount = seriesCount;
+    }
+
+    /**
+     * Cull the n converted bars to those intersecting the pixel window [0, width],
+     * moving their edges to the front of mBarLeft and mBarRight.  Sets
+     * {@link #mBarCount} and {@link #mMaxBarWidth}, and returns the index of the
+     * first visible bar among the n.
+     */
+    private int compactVisibleBars(int n) {
+        final int width = getWidth();
+        int from = 0;
+        while (from < n && mBarRight[from] < 0) {
+            from++;
+        }
+        int to = from;
+        while (to < n && mBarLeft[to] <= width) {
+            to++;
+        }
+
+        final int count = to - from;
+        System.arraycopy(mBarLeft, from, mBarLeft, 0, count);
+        System.arraycopy(mBarRight, from, mBarRight, 0, count);
+
+        float maxWidth = 1f;
+        for (int k = 0; k < count; k++) {
+            maxWidth = Math.max(maxWidth, getSnappedRight(k) - (int) mBarLeft[k]);
+        }
+        mBarCount = count;
+        mMaxBarWidth = maxWidth;
+        return from;
+    }
+
+    /**
+     * Right edge of a bar in whole pixels, at least a pixel past its left edge.
+     */
+    private int getSnappedRight(int bar) {
+        return Math.max((int) mBarRight[bar], (int) mBarLeft[bar] + 1);
+    }
+
+    /**
+     * Binary search for the first bar whose left edge is at or after the point.
+     */
+    private int findFirstBarAtOrAfter(float point) {
+        int low = 0;
+        int high = mBarCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mBarLeft[mid] < point) {
+                low = mid + 1;
             } else {
-            	// Outside of the selected area.
-            	mPaint.setColor(mDefaultColor);
+                high = mid;
             }
- 			
- 			canvas.drawRect(rect, mPaint);
         }
-        
+        return low;
     }
-    
+
+    private void ensureBarCapacity(int count) {
+        if (mBarLeft.length < count) {
+            mBarLeft = new float[count];
+            mBarRight = new float[count];
+            mBarTop = new float[count];
+            mSegmentTop = new float[count];
+            mStartTimes = new long[count];
+            mEndTimes = new long[count];
+            mTotals = new long[count];
+        }
+    }
+
 }
@@ -16,8 +16,30 @@
 package com.rw.barcharttest.usagechart;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import android.text.format.DateUtils;
+
+/**
+ * Daily usage history for the chart.  Samples are kept in columnar form: the
+ * dates and byte counts live in parallel primitive arrays that grow as needed,
+ * so long histories don't pay for an object per sample.  {@link Entry} is still
+ * available for callers that want one, but it is built on demand.
+ * 
+ * Subclasses may supply the samples from elsewhere by overriding
+ * {@link #size()}, {@link #getDate(int)} and {@link #getTotalBytes(int)}; every
+ * query and index reads the samples through those.  Subclasses that keep
+ * their own indexes can also take over the range aggregates, see
+ * {@link #sumRange(int, int)}.
+ * 
+ * Data may also be split into several series that share the same dates, such
+ * as Wi-Fi and mobile usage.  The total of each entry is then the sum of its
+ * series, so every aggregate covers the stacked total.
+ * 
+ * Not thread safe.  Data bound to a view is read while drawing, so update it
+ * on the main thread only, posting samples there from any counter thread.
+ */
 public class ChartData {
 	
 	public static class Entry {
@@ -25,90 +47,419 @@ public class ChartData {
 		public long totalBytes;
 	}
 	
+	/**
+	 * Window of consecutive entries in a {@link ChartData}.  Indexes passed to
+	 * the accessors are relative to the start of the window.
+	 */
+	public static class Range {
+		private ChartData data;
+		private int from;
+		private int to;
+		
+		void set(ChartData data, int from, int to) {
+			this.data = data;
+			this.from = from;
+			this.to = to;
+		}
+		
+		public int size() {
+			return to - from;
+		}
+		
+		/** Index of the first entry of the window in the backing data. */
+		public int getFrom() {
+			return from;
+		}
+		
+		/** Index just past the last entry of the window in the backing data. */
+		public int getTo() {
+			return to;
+		}
+		
+		public long getDate(int index) {
+			return data.getDate(from + index);
+		}
+		
+		public long getTotalBytes(int index) {
+			return data.getTotalBytes(from + index);
+		}
+	}
+	
+	/**
+	 * Notified on the calling thread whenever entries are added or updated,
+	 * which for data bound to a view is always the main thread.
+	 */
+	public interface OnChangeListener {
+		/**
+		 * @param data The data that changed.
+		 * @param fromIndex Index of the first changed entry.
+		 * @param toIndex Index just past the last changed entry.
+		 */
+		void onChartDataChanged(ChartData data, int fromIndex, int toIndex);
+	}
+	
+	private static final int DEFAULT_CAPACITY = 32;
+	
 	// The time range for this data.
 	private long start;
 	private long end;
 	
-	List<Entry> entries;
+	// Nominal length of time covered by each entry.
+	private long bucketDuration = DateUtils.DAY_IN_MILLIS;
+	
+	// Parallel columns ordered by date from oldest to newest.
+	private long[] dates;
+	private long[] totalBytes;
+	private int size;
+	
+	// Optional per-series columns, indexed by series then entry.  Null for
+	// single series data, in which case the total is the only series.
+	private long[][] series;
+	
+	// prefixSums[i] is the sum of totalBytes[0, i), so it has size + 1 entries.
+	// Built on first use along with extremes, then maintained on append.
+	private long[] prefixSums;
+	
+	// Range min/max over totalBytes, used to size the vertical axis.
+	private MinMaxTree extremes;
+	
+	// Built on first use, then maintained on append.
+	private ChartDataPyramid pyramid;
+	
+	private final List<OnChangeListener> listeners = new ArrayList<OnChangeListener>();
+	
+	// Bumped on every change so views can tell when cached geometry is stale.
+	private int version;
 	
 	public ChartData() {
-		entries = new ArrayList<Entry>();
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public ChartData(int capacity) {
+		this(capacity, 1);
+	}
+	
+	/**
+	 * @param capacity Number of entries to allocate room for.
+	 * @param seriesCount Number of series sharing the dates.
+	 */
+	public ChartData(int capacity, int seriesCount) {
+		capacity = Math.max(capacity, 1);
+		dates = new long[capacity];
+		totalBytes = new long[capacity];
+		if (seriesCount > 1) {
+			series = new long[seriesCount][capacity];
+		}
 		
 		this.start = Long.MAX_VALUE;
 		this.end = Long.MIN_VALUE;
 	}
 
 	public int size() {
-		return entries.size();
+		return size;
+	}
+	
+	public long getDate(int index) {
+		return dates[index];
+	}
+	
+	public long getTotalBytes(int index) {
+		return totalBytes[index];
 	}
 	
+	public int getSeriesCount() {
+		return series != null ? series.length : 1;
+	}
+	
+	/**
+	 * Bytes of the given series for the entry at the given index.  The totals
+	 * from {@link #getTotalBytes(int)} are the sum across all series.
+	 * 
+	 * @param seriesIndex
+	 * @param index
+	 * @return
+	 */
+	public long getSeriesBytes(int seriesIndex, int index) {
+		return series != null ? series[seriesIndex][index] : getTotalBytes(index);
+	}
+	
+	/**
+	 * Builds an {@link Entry} for the given index.  Prefer {@link #getDate(int)}
+	 * and {@link #getTotalBytes(int)} in hot paths since this allocates.
+	 * 
+	 * @param index
+	 * @return The entry, or null when the index is out of range.
+	 */
 	public Entry getEntry(int index) {
 		Entry entry = null;
 		
-		if (index >= 0 && index < entries.size()) {
-			entry = entries.get(index);
+		if (index >= 0 && index < size()) {
+			entry = new Entry();
+			entry.date = getDate(index);
+			entry.totalBytes = getTotalBytes(index);
 		}
 		
 		return entry;
 	}
+	
+	/**
+	 * Entries should be added ordered by date from oldest to newest.
+	 * 
+	 * @param date
+	 * @param totalBytes
+	 */
+	public void addEntry(long date, long totalBytes) {
+		ensureCapacity(size + 1);
+		append(date, totalBytes);
+		setSeries(size - 1, totalBytes, null);
+		dispatchChanged(size - 1, size);
+	}
+	
+	/**
+	 * Add an entry split across series.  For single series data the values
+	 * are summed into the total.
+	 * 
+	 * @param date
+	 * @param seriesBytes One value per series.
+	 */
+	public void addEntry(long date, long[] seriesBytes) {
+		final long totalBytes = total(seriesBytes);
+		ensureCapacity(size + 1);
+		append(date, totalBytes);
+		setSeries(size - 1, totalBytes, seriesBytes);
+		dispatchChanged(size - 1, size);
+	}
 		
 	public void addEntries(List<Entry> entries) {
-		this.entries.addAll(entries);
+		final int from = size;
+		ensureCapacity(size + entries.size());
+		for (Entry entry : entries) {
+			append(entry.date, entry.totalBytes);
+			setSeries(size - 1, entry.totalBytes, null);
+		}
+		if (size > from) {
+			dispatchChanged(from, size);
+		}
 	}
 	
-	public List<Entry> getEntries(long start, long end) {
-		List<Entry> list = new ArrayList<Entry>();
-
-		for (Entry entry : entries) {
-			if (entry.date >= start && entry.date <= end) {
-				list.add(entry);
-			}
-
-			// Entries should be ordered from oldest to newest.
-			if (end < entry.date) {
-				break;
+	/**
+	 * Add a new trailing sample, or update the existing sample with the same
+	 * date.  Totals, extremes and the start/end bounds are maintained
+	 * incrementally and listeners are told which index changed.  Updating
+	 * costs O(size - index), so it is meant for recent samples.
+	 * 
+	 * @param date
+	 * @param totalBytes
+	 * @return Index of the sample that was added or updated.
+	 * @throws IllegalArgumentException if the date is older than the last
+	 *     sample and doesn't match an existing one.
+	 */
+	public int upsert(long date, long totalBytes) {
+		return upsert(date, totalBytes, null);
+	}
+	
+	/**
+	 * Same as {@link #upsert(long, long)} for an entry split across series.
+	 * 
+	 * @param date
+	 * @param seriesBytes One value per series.
+	 * @return Index of the sample that was added or updated.
+	 */
+	public int upsert(long date, long[] seriesBytes) {
+		return upsert(date, total(seriesBytes), seriesBytes);
+	}
+	
+	private int upsert(long date, long totalBytes, long[] seriesBytes) {
+		final int index;
+		if (size == 0 || date > dates[size - 1]) {
+			ensureCapacity(size + 1);
+			append(date, totalBytes);
+			index = size - 1;
+		} else {
+			index = lowerBound(date);
+			if (dates[index] != date) {
+				throw new IllegalArgumentException("Entries must be added ordered by date");
 			}
+			update(index, totalBytes);
+		}
+		setSeries(index, totalBytes, seriesBytes);
+		
+		start = Math.min(start, date);
+		end = Math.max(end, date);
+		
+		dispatchChanged(index, index + 1);
+		return index;
+	}
+	
+	/**
+	 * Counter that changes whenever entries are added or updated.
+	 * 
+	 * @return
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	public void addOnChangeListener(OnChangeListener listener) {
+		if (!listeners.contains(listener)) {
+			listeners.add(listener);
+		}
+	}
+	
+	public void removeOnChangeListener(OnChangeListener listener) {
+		listeners.remove(listener);
+	}
+	
+	public List<Entry> getEntries(long start, long end) {
+		final int from = lowerBound(start);
+		final int to = upperBound(end);
+		
+		List<Entry> list = new ArrayList<Entry>(Math.max(to - from, 0));
+		for (int i = from; i < to; i++) {
+			list.add(getEntry(i));
 		}
 		
 		return list;
 	}
 	
+	/**
+	 * Returns a view over the entries dated within [start, end] without copying
+	 * them.  The view reads straight from this data, so it reflects later
+	 * appends only after being requested again.
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public Range getRange(long start, long end) {
+		return getRange(start, end, new Range());
+	}
+	
+	/**
+	 * Same as {@link #getRange(long, long)}, but reuses the given range so
+	 * that callers on the draw path don't allocate.
+	 * 
+	 * @param start
+	 * @param end
+	 * @param range The range to fill in.
+	 * @return The given range.
+	 */
+	public Range getRange(long start, long end, Range range) {
+		final int from = lowerBound(start);
+		range.set(this, from, Math.max(upperBound(end), from));
+		return range;
+	}
+	
+	/**
+	 * Level-of-detail pyramid for drawing zoomed out ranges.  It is built on
+	 * first use and kept current as entries are added.
+	 * 
+	 * @return
+	 */
+	public ChartDataPyramid getPyramid() {
+		if (pyramid == null) {
+			pyramid = new ChartDataPyramid(this);
+		}
+		return pyramid;
+	}
+	
+	/**
+	 * Total bytes of the entries dated within [start, end].  Runs in O(log n)
+	 * regardless of the length of the range.
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public long sum(long start, long end) {
+		final int from = lowerBound(start);
+		final int to = upperBound(end);
+		return to > from ? sumRange(from, to) : 0;
+	}
+	
+	/**
+	 * Number of entries dated within [start, end].
+	 * 
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public int count(long start, long end) {
+		return Math.max(upperBound(end) - lowerBound(start), 0);
+	}
+	
+	/**
+	 * Average bytes per entry dated within [start, end].
+	 * 
+	 * @param start
+	 * @param end
+	 * @return The mean, or 0 when no entries fall within the range.
+	 */
+	public long mean(long start, long end) {
+		final int from = lowerBound(start);
+		final int to = upperBound(end);
+		return to > from ? sumRange(from, to) / (to - from) : 0;
+	}
+	
 	/**
 	 * Entries should be ordered by date from oldest to newest.
 	 * 
 	 * @param timestamp
-	 * @return
+	 * @return Index of the first entry dated at or after the timestamp.
 	 */
 	public int getIndexBefore(long timestamp) {
-		int before = -1;
-		for (int i = 0; i < entries.size(); i++) {
-			Entry e = entries.get(i);
-			if (timestamp <= e.date) {
-				before = i;
-				break;
-			}
+		int before = lowerBound(timestamp);
+		if (before == size()) {
+			before = -1;
 		}
-		return MathUtils.constrain(before, 0, entries.size() - 1);
+		return MathUtils.constrain(before, 0, size() - 1);
 	}
 	
 	/**
 	 * Entries should be ordered by date from oldest to newest.
 	 * 
 	 * @param timestamp
-	 * @return
+	 * @return Index of the last entry dated at or before the timestamp.
 	 */
 	public int getIndexAfter(long timestamp) {
-		int after = -1;
-		
-		for (int i = entries.size() - 1; i >= 0; i--) {
-			Entry e = entries.get(i);
-			if (timestamp >= e.date) {
-				after = i;
-				break;
+		final int after = upperBound(timestamp) - 1;
+		return MathUtils.constrain(after, 0, size() - 1);
+	}
+	
+	/**
+	 * Binary search for the first index whose date is >= timestamp, or
+	 * {@link #size()} if there is none.
+	 */
+	private int lowerBound(long timestamp) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (getDate(mid) < timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
 			}
 		}
-		
-		return MathUtils.constrain(after, 0, entries.size() - 1);
+		return low;
+	}
+	
+	/**
+	 * Binary search for the first index whose date is > timestamp, or
+	 * {@link #size()} if there is none.
+	 */
+	private int upperBound(long timestamp) {
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (getDate(mid) <= timestamp) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
 	}
 	
 	public long getStart() {
@@ -126,15 +477,169 @@ public class ChartData {
 	public void setEnd(long end) {
 		this.end = end;
 	}
+	
+	/**
+	 * Nominal length of time each entry covers, such as a day for daily
+	 * samples.  Used to size the bars.
+	 * 
+	 * @return
+	 */
+	public long getBucketDuration() {
+		return bucketDuration;
+	}
+	
+	public void setBucketDuration(long bucketDuration) {
+		this.bucketDuration = bucketDuration;
+	}
 
 	public long getVerticalMax() {
-		long max = 0;
-
-		for (Entry entry : entries) {
-			max = Math.max(entry.totalBytes, max);
-		}
-		
-	    return max;
+		return Math.max(maxRange(0, size()), 0);
     }
+	
+	/**
+	 * Largest byte count of the entries dated within [start, end].
+	 * 
+	 * @param start
+	 * @param end
+	 * @return The maximum, or 0 when no entries fall within the range.
+	 */
+	public long getVerticalMax(long start, long end) {
+		return Math.max(maxRange(lowerBound(start), upperBound(end)), 0);
+	}
+	
+	/**
+	 * Smallest byte count of the entries dated within [start, end].
+	 * 
+	 * @param start
+	 * @param end
+	 * @return The minimum, or 0 when no entries fall within the range.
+	 */
+	public long getVerticalMin(long start, long end) {
+		final long min = minRange(lowerBound(start), upperBound(end));
+		return min == Long.MAX_VALUE ? 0 : min;
+	}
+	
+	/**
+	 * Sum of the totals of the entries at indexes [from, to), with from < to.
+	 * The default answers from prefix sums built on the heap the first time an
+	 * aggregate is requested.
+	 */
+	long sumRange(int from, int to) {
+		ensureIndexes();
+		return prefixSums[to] - prefixSums[from];
+	}
+	
+	/**
+	 * Largest total of the entries at indexes [from, to), or Long.MIN_VALUE
+	 * when the range is empty.
+	 */
+	long maxRange(int from, int to) {
+		ensureIndexes();
+		return extremes.max(from, to);
+	}
+	
+	/**
+	 * Smallest total of the entries at indexes [from, to), or Long.MAX_VALUE
+	 * when the range is empty.
+	 */
+	long minRange(int from, int to) {
+		ensureIndexes();
+		return extremes.min(from, to);
+	}
+	
+	private void append(long date, long totalBytes) {
+		this.dates[size] = date;
+		this.totalBytes[size] = totalBytes;
+		if (prefixSums != null) {
+			prefixSums[size + 1] = prefixSums[size] + totalBytes;
+			extremes.set(size, totalBytes);
+		}
+		size++;
+		if (pyramid != null) {
+			pyramid.append(size - 1, totalBytes);
+		}
+	}
+	
+	/**
+	 * Fill in the series columns for an entry.  Without per-series values the
+	 * whole total is attributed to the first series.
+	 */
+	private void setSeries(int index, long totalBytes, long[] seriesBytes) {
+		if (series == null) {
+			return;
+		}
+		for (int s = 0; s < series.length; s++) {
+			if (seriesBytes != null) {
+				series[s][index] = s < seriesBytes.length ? seriesBytes[s] : 0;
+			} else {
+				series[s][index] = s == 0 ? totalBytes : 0;
+			}
+		}
+	}
+	
+	private static long total(long[] values) {
+		long sum = 0;
+		for (long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+	
+	private void update(int index, long totalBytes) {
+		final long delta = totalBytes - this.totalBytes[index];
+		this.totalBytes[index] = totalBytes;
+		if (prefixSums != null) {
+			for (int i = index + 1; i <= size; i++) {
+				prefixSums[i] += delta;
+			}
+			extremes.set(index, totalBytes);
+		}
+		if (pyramid != null) {
+			pyramid.update(index);
+		}
+	}
+	
+	/**
+	 * Build the prefix sums and min/max tree with a single pass over the
+	 * samples the first time an aggregate is requested.
+	 */
+	private void ensureIndexes() {
+		if (prefixSums == null) {
+			final int count = size();
+			final long[] sums = new long[Math.max(count, dates.length) + 1];
+			final MinMaxTree tree = new MinMaxTree(count);
+			for (int i = 0; i < count; i++) {
+				final long value = getTotalBytes(i);
+				sums[i + 1] = sums[i] + value;
+				tree.set(i, value);
+			}
+			prefixSums = sums;
+			extremes = tree;
+		}
+	}
+	
+	private void dispatchChanged(int fromIndex, int toIndex) {
+		version++;
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).onChartDataChanged(this, fromIndex, toIndex);
+		}
+	}
+	
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity > dates.length) {
+			// Grow by half again to keep appends amortized constant time.
+			final int capacity = Math.max(minCapacity, dates.length + (dates.length >> 1));
+			dates = Arrays.copyOf(dates, capacity);
+			totalBytes = Arrays.copyOf(totalBytes, capacity);
+			if (series != null) {
+				for (int s = 0; s < series.length; s++) {
+					series[s] = Arrays.copyOf(series[s], capacity);
+				}
+			}
+			if (prefixSums != null) {
+				prefixSums = Arrays.copyOf(prefixSums, capacity + 1);
+			}
+		}
+	}
 
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rw.barcharttest.usagechart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import android.text.format.DateUtils;
+
+/**
+ * Compact binary format for {@link ChartData}.
+ * 
+ * After a small header, each date is stored as the difference between its
+ * step from the previous date and the bucket duration of the data, so evenly
+ * spaced samples cost a single byte, and each byte count is stored as a varint.
+ * Data split across several series stores the count of every series instead
+ * of the total, which is their sum.  Decoding reads the whole payload at once and fills the primitive columns
+ * of a new {@link ChartData} without creating an object per sample.
+ */
+public final class ChartDataCodec {
+
+	private static final int MAGIC = 0x52574344; // "RWCD"
+	private static final int VERSION = 3;
+
+	private ChartDataCodec() {
+	}
+
+	public static void write(ChartData data, File file) throws IOException {
+		final OutputStream out = new FileOutputStream(file);
+		try {
+			write(data, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static ChartData read(File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Encode the data into the stream.  The whole payload is encoded in memory
+	 * and written with a single call.
+	 */
+	public static void write(ChartData data, OutputStream out) throws IOException {
+		final int size = data.size();
+		final int seriesCount = data.getSeriesCount();
+		final Encoder encoder = new Encoder(16 + size * (2 + seriesCount * 2));
+
+		encoder.writeInt(MAGIC);
+		encoder.writeVarLong(VERSION);
+		encoder.writeVarLong(size);
+		encoder.writeVarLong(zigzag(data.getStart()));
+		encoder.writeVarLong(zigzag(data.getEnd()));
+		encoder.writeVarLong(data.getBucketDuration());
+		encoder.writeVarLong(seriesCount);
+
+		final long step = data.getBucketDuration();
+		long previous = 0;
+		for (int i = 0; i < size; i++) {
+			final long date = data.getDate(i);
+			if (i == 0) {
+				encoder.writeVarLong(zigzag(date));
+			} else {
+				encoder.writeVarLong(zigzag(date - previous - step));
+			}
+			if (seriesCount > 1) {
+				for (int s = 0; s < seriesCount; s++) {
+					encoder.writeVarLong(data.getSeriesBytes(s, i));
+				}
+			} else {
+				encoder.writeVarLong(data.getTotalBytes(i));
+			}
+			previous = date;
+		}
+
+		out.write(encoder.buffer, 0, encoder.position);
+	}
+
+	/**
+	 * Decode data previously written by {@link #write(ChartData, OutputStream)}.
+	 */
+	public static ChartData read(InputStream in) throws IOException {
+		final Decoder decoder = new Decoder(readFully(in));
+
+		if (decoder.readInt() != MAGIC) {
+			throw new IOException("Not a chart data stream");
+		}
+		final long version = decoder.readVarLong();
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported chart data version " + version);
+		}
+		final long size = decoder.readVarLong();
+		final long start = unzigzag(decoder.readVarLong());
+		final long end = unzigzag(decoder.readVarLong());
+
+		// Version 1 always stepped by a day, and versions before 3 held totals only.
+		final long step = version >= 2 ? decoder.readVarLong() : DateUtils.DAY_IN_MILLIS;
+		final long seriesCount = version >= 3 ? decoder.readVarLong() : 1;
+		if (seriesCount < 1 || seriesCount > Math.max(decoder.remaining(), 1)) {
+			throw new IOException("Malformed chart data series count " + seriesCount);
+		}
+
+		// Each sample takes at least a byte for its date and one per count, so a
+		// corrupt size is caught before it is allocated.
+		if (size < 0 || size > decoder.remaining() / (1 + seriesCount)) {
+			throw new IOException("Malformed chart data size " + size);
+		}
+
+		final ChartData data = new ChartData((int) size, (int) seriesCount);
+		data.setStart(start);
+		data.setEnd(end);
+		data.setBucketDuration(step);
+
+		final long[] seriesBytes = seriesCount > 1 ? new long[(int) seriesCount] : null;
+
+		long date = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0) {
+				date = unzigzag(decoder.readVarLong());
+			} else {
+				date += unzigzag(decoder.readVarLong()) + step;
+			}
+			if (seriesBytes != null) {
+				for (int s = 0; s < seriesBytes.length; s++) {
+					seriesBytes[s] = decoder.readVarLong();
+				}
+				data.addEntry(date, seriesBytes);
+			} else {
+				data.addEntry(date, decoder.readVarLong());
+			}
+		}
+
+		return data;
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 64));
+		final byte[] chunk = new byte[8192];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			out.write(chunk, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static class Encoder {
+		byte[] buffer;
+		int position;
+
+		Encoder(int capacity) {
+			buffer = new byte[capacity];
+		}
+
+		void writeInt(int value) {
+			ensureCapacity(4);
+			buffer[position++] = (byte) (value >>> 24);
+			buffer[position++] = (byte) (value >>> 16);
+			buffer[position++] = (byte) (value >>> 8);
+			buffer[position++] = (byte) value;
+		}
+
+		/** Unsigned LEB128, seven bits per byte. */
+		void writeVarLong(long value) {
+			ensureCapacity(10);
+			while ((value & ~0x7FL) != 0) {
+				buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[position++] = (byte) value;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (position + extra > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(position + extra, buffer.length * 2));
+			}
+		}
+	}
+
+	private static class Decoder {
+		final byte[] buffer;
+		int position;
+
+		Decoder(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		int readInt() throws IOException {
+			if (position + 4 > buffer.length) {
+				throw new IOException("Truncated chart data");
+			}
+			return ((buffer[position++] & 0xFF) << 24) | ((buffer[position++] & 0xFF) << 16)
+					| ((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF);
+		}
+
+		int remaining() {
+			return buffer.length - position;
+		}
+
+		long readVarLong() throws IOException {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (position >= buffer.length) {
+					throw new IOException("Truncated chart data");
+				}
+				final byte b = buffer[position++];
+				result |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return result;
+				}
+			}
+			throw new IOException("Malformed varint in chart data");
+		}
+	}
+
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rw.barcharttest.usagechart;
+
+import java.util.Arrays;
+
+/**
+ * Level-of-detail pyramid over a {@link ChartData}.  Level k groups the raw
+ * entries into buckets of 2^k consecutive entries and keeps the min, max and
+ * sum of each bucket.  Level 0 is the raw data itself and isn't stored here.
+ * 
+ * Obtain one through {@link ChartData#getPyramid()}; it is kept up to date as
+ * entries are appended.  Since buckets are aligned to their size, the levels
+ * also form a segment tree, so any range of raw entries can be summarized from
+ * O(log n) buckets.
+ */
+public class ChartDataPyramid {
+
+	private final ChartData data;
+
+	// Indexed by level; slot 0 is unused since level 0 is the raw data.
+	private long[][] maxes;
+	private long[][] mins;
+	private long[][] sums;
+	private int[] counts;
+	private int levels;
+
+	/**
+	 * For subclasses that supply the levels themselves by overriding
+	 * {@link #getBucketCount(int)}, {@link #getMax(int, int)},
+	 * {@link #getMin(int, int)} and {@link #getSum(int, int)}.
+	 */
+	ChartDataPyramid(ChartData data, int levels) {
+		this.data = data;
+		this.levels = levels;
+	}
+
+	ChartDataPyramid(ChartData data) {
+		this.data = data;
+		maxes = new long[1][];
+		mins = new long[1][];
+		sums = new long[1][];
+		counts = new int[1];
+		levels = 1;
+
+		for (int i = 0; i < data.size(); i++) {
+			append(i, data.getTotalBytes(i));
+		}
+	}
+
+	/**
+	 * Fold the entry at the given index into every level.  Entries must be
+	 * appended in order.
+	 */
+	void append(int index, long totalBytes) {
+		for (int level = 1; level < levels; level++) {
+			final int bucket = index >>> level;
+			if (bucket == counts[level]) {
+				ensureBucketCapacity(level, bucket + 1);
+				maxes[level][bucket] = totalBytes;
+				mins[level][bucket] = totalBytes;
+				sums[level][bucket] = totalBytes;
+				counts[level]++;
+			} else {
+				maxes[level][bucket] = Math.max(maxes[level][bucket], totalBytes);
+				mins[level][bucket] = Math.min(mins[level][bucket], totalBytes);
+				sums[level][bucket] += totalBytes;
+			}
+		}
+
+		// New levels are seeded from the ones below, which now include this entry.
+		ensureLevels(index + 1);
+	}
+
+	/**
+	 * Recompute the buckets holding the entry at the given index after its
+	 * value changed in the data.
+	 */
+	void update(int index) {
+		for (int level = 1; level < levels; level++) {
+			merge(level, index >>> level, getBucketCount(level - 1));
+		}
+	}
+
+	/** Number of levels, including the raw level 0. */
+	public int getLevelCount() {
+		return levels;
+	}
+
+	/**
+	 * Pick the coarsest level that still leaves at least one bucket per
+	 * column when showing the given number of raw entries.
+	 * 
+	 * @param entryCount Number of raw entries to show.
+	 * @param columns Number of pixel columns available.
+	 * @return
+	 */
+	public int getLevelForDensity(int entryCount, int columns) {
+		if (columns <= 0) {
+			return 0;
+		}
+
+		int level = 0;
+		while (level + 1 < levels && (entryCount >>> (level + 1)) >= columns) {
+			level++;
+		}
+		return level;
+	}
+
+	public int getBucketCount(int level) {
+		return level == 0 ? data.size() : counts[level];
+	}
+
+	/** Index of the bucket at the given level that holds the raw entry. */
+	public int getBucket(int level, int index) {
+		return index >>> level;
+	}
+
+	/** Date of the first raw entry in the bucket. */
+	public long getStartDate(int level, int bucket) {
+		return data.getDate(bucket << level);
+	}
+
+	/** Date of the last raw entry in the bucket. */
+	public long getEndDate(int level, int bucket) {
+		final int last = Math.min((bucket + 1) << level, data.size()) - 1;
+		return data.getDate(last);
+	}
+
+	public long getMax(int level, int bucket) {
+		return level == 0 ? data.getTotalBytes(bucket) : maxes[level][bucket];
+	}
+
+	public long getMin(int level, int bucket) {
+		return level == 0 ? data.getTotalBytes(bucket) : mins[level][bucket];
+	}
+
+	public long getSum(int level, int bucket) {
+		return level == 0 ? data.getTotalBytes(bucket) : sums[level][bucket];
+	}
+
+	/**
+	 * Largest total of the raw entries at indexes [from, to).
+	 * 
+	 * @return The maximum, or Long.MIN_VALUE when the range is empty.
+	 */
+	public long getRangeMax(int from, int to) {
+		long result = Long.MIN_VALUE;
+		for (int level = 0; from < to; level++, from >>>= 1, to >>>= 1) {
+			if ((from & 1) != 0) result = Math.max(result, getMax(level, from++));
+			if ((to & 1) != 0) result = Math.max(result, getMax(level, --to));
+		}
+		return result;
+	}
+
+	/**
+	 * Smallest total of the raw entries at indexes [from, to).
+	 * 
+	 * @return The minimum, or Long.MAX_VALUE when the range is empty.
+	 */
+	public long getRangeMin(int from, int to) {
+		long result = Long.MAX_VALUE;
+		for (int level = 0; from < to; level++, from >>>= 1, to >>>= 1) {
+			if ((from & 1) != 0) result = Math.min(result, getMin(level, from++));
+			if ((to & 1) != 0) result = Math.min(result, getMin(level, --to));
+		}
+		return result;
+	}
+
+	/**
+	 * Sum of the totals of the raw entries at indexes [from, to).
+	 */
+	public long getRangeSum(int from, int to) {
+		long result = 0;
+		for (int level = 0; from < to; level++, from >>>= 1, to >>>= 1) {
+			if ((from & 1) != 0) result += getSum(level, from++);
+			if ((to & 1) != 0) result += getSum(level, --to);
+		}
+		return result;
+	}
+
+	/**
+	 * Make sure there are enough levels for the coarsest one to hold all of
+	 * the given number of entries in a single bucket.
+	 */
+	private void ensureLevels(int size) {
+		final int needed = 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1) + 1;
+		if (needed <= levels) {
+			return;
+		}
+
+		maxes = Arrays.copyOf(maxes, needed);
+		mins = Arrays.copyOf(mins, needed);
+		sums = Arrays.copyOf(sums, needed);
+		counts = Arrays.copyOf(counts, needed);
+
+		// Seed each new level by merging pairs of buckets from the one below.
+		for (int level = levels; level < needed; level++) {
+			final int below = level - 1;
+			final int belowCount = below == 0 ? size : counts[below];
+			final int count = (belowCount + 1) >>> 1;
+			maxes[level] = new long[Math.max(count, 1)];
+			mins[level] = new long[Math.max(count, 1)];
+			sums[level] = new long[Math.max(count, 1)];
+			for (int b = 0; b < count; b++) {
+				merge(level, b, belowCount);
+			}
+			counts[level] = count;
+		}
+		levels = needed;
+	}
+
+	/**
+	 * Set a bucket from the pair of buckets below it.
+	 * 
+	 * @param belowCount Number of buckets in the level below.
+	 */
+	private void merge(int level, int bucket, int belowCount) {
+		final int below = level - 1;
+		final int left = bucket * 2;
+		final int right = left + 1;
+
+		long max = getMax(below, left);
+		long min = getMin(below, left);
+		long sum = getSum(below, left);
+		if (right < belowCount) {
+			max = Math.max(max, getMax(below, right));
+			min = Math.min(min, getMin(below, right));
+			sum += getSum(below, right);
+		}
+		maxes[level][bucket] = max;
+		mins[level][bucket] = min;
+		sums[level][bucket] = sum;
+	}
+
+	private void ensureBucketCapacity(int level, int minCapacity) {
+		final int length = maxes[level].length;
+		if (minCapacity > length) {
+			final int capacity = Math.max(minCapacity, length + (length >> 1));
+			maxes[level] = Arrays.copyOf(maxes[level], capacity);
+			mins[level] = Arrays.copyOf(mins[level], capacity);
+			sums[level] = Arrays.copyOf(sums[level], capacity);
+		}
+	}
+
+}
@@ -17,17 +17,20 @@
 package com.rw.barcharttest.usagechart;
 
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.Message;
 import android.support.annotation.NonNull;
+import android.text.format.DateUtils;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 
 import com.rw.barcharttest.R;
-import com.rw.barcharttest.usagechart.ChartData.Entry;
 import com.rw.barcharttest.usagechart.ChartSweepView.OnSweepListener;
 
 import java.util.Date;
@@ -45,6 +48,14 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
 
     private static final boolean LIMIT_SWEEPS_TO_VALID_DATA = false;
 
+    /** Shortest span the user can pinch-zoom in to. */
+    private static final long MIN_VISIBLE_SPAN = DateUtils.WEEK_IN_MILLIS;
+
+    /** Closest that vertical grid lines may get, in dp. */
+    private static final float MIN_TICK_SPACING_DP = 24;
+
+    private final TimeAxis mTimeAxis;
+
     private ChartGridView mGrid;
     private ChartBarGraphView mBarChart;
 
@@ -56,6 +67,9 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
 
     private Handler mHandler;
 
+    /** Set when a viewport gesture moved the inspection range. */
+    private boolean mInspectRangeDirty;
+
     /** Current maximum value of {@link #mVert}. */
     private long mVertMax;
 
@@ -75,7 +89,11 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
 
     public ChartDataUsageView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        init(new TimeAxis(), new InvertedChartAxis(new DataAxis()));
+        mTimeAxis = new TimeAxis();
+        mTimeAxis.setMinTickSpacing(MIN_TICK_SPACING_DP * getResources().getDisplayMetrics().density);
+        init(mTimeAxis, new InvertedChartAxis(new DataAxis()));
+        setMinViewportSpan(MIN_VISIBLE_SPAN);
+        setViewportGesturesEnabled(true);
 
         mHandler = new Handler() {
             @Override
@@ -135,18 +153,17 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
     }
 
     public void bindChartData(ChartData data) {
+    	if (mData != null) {
+    		mData.removeOnChangeListener(mDataListener);
+    	}
     	mBarChart.bindChartData(data);
     	mData = data;
-        
-    	long avg = 1;
-    	if (data.entries.size() > 0) {
-    		long sum = 0;
-	    	for (Entry entry : data.entries) {
-	    		sum += entry.totalBytes;
-	    	}
-	    	avg = sum / data.entries.size();
+    	// only follow the data while attached, so it can't outlive the window
+    	if (isAttachedToWindow()) {
+    		mData.addOnChangeListener(mDataListener);
     	}
-      	mSweepAverage.setValue(avg);
+        
+    	updateAverage();
       	mSweepAverage.setVisibility(View.VISIBLE);
         
         updateVertAxisBounds(null);
@@ -154,10 +171,49 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
         requestLayout();
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        getContext().registerReceiver(mTimeZoneReceiver,
+                new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+        if (mData != null) {
+            mData.addOnChangeListener(mDataListener);
+            // catch up on samples that arrived while detached
+            if (mData.size() > 0) {
+                mDataListener.onChartDataChanged(mData, 0, mData.size());
+            }
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        getContext().unregisterReceiver(mTimeZoneReceiver);
+        if (mData != null) {
+            mData.removeOnChangeListener(mDataListener);
+        }
+        mHandler.removeMessages(MSG_UPDATE_AXIS);
+    }
+
+    /**
+     * Set the color of each series when the bound data is split across series.
+     */
+    public void setSeriesColors(int... colors) {
+        mBarChart.setSeriesColors(colors);
+    }
+
     public ChartData getChartData() {
     	return mData;
     }
 
+    private void updateAverage() {
+    	long avg = 1;
+    	if (mData.size() > 0) {
+    		avg = mData.mean(Long.MIN_VALUE, Long.MAX_VALUE);
+    	}
+    	mSweepAverage.setValue(avg);
+    }
+
     /**
      * Update {@link #mVert} to both show data proper data.
      */
@@ -191,7 +247,7 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
             mSweepAverage.setValidRange(0L, newMax);
 
             if (changed) {
-                mBarChart.invalidate();
+                mBarChart.invalidateBars();
             }
 
             mGrid.invalidate();
@@ -203,6 +259,49 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
         }
     }
 
+    /**
+     * Samples appended or updated after binding only touch the running aggregates in
+     * {@link ChartData}, so refresh the average from those instead of rebinding.  The
+     * axis and bars only follow when the changed entries are on screen, and the axis
+     * only when they reach above it; an update lowering the visible max leaves the
+     * axis as it is until the viewport next moves.  Called on the main thread, which
+     * is the only thread bound data may be updated on.
+     */
+    private ChartData.OnChangeListener mDataListener = new ChartData.OnChangeListener() {
+        @Override
+        public void onChartDataChanged(ChartData data, int fromIndex, int toIndex) {
+            final long firstDate = data.getDate(fromIndex);
+            final long lastDate = data.getDate(toIndex - 1) + data.getBucketDuration();
+            final boolean visible = lastDate >= mViewportStart && firstDate <= mViewportEnd;
+
+            updateAverage();
+            if (visible && data.maxRange(fromIndex, toIndex) * 12 / 10 > mVertMax) {
+                updateVertAxisBounds(null);
+            }
+            layoutSweep(mSweepAverage);
+            if (visible) {
+                mBarChart.invalidate();
+            }
+        }
+    };
+
+    /**
+     * Local days move with the system time zone, so rebuild the day table and
+     * everything placed or labeled by day.
+     */
+    private BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            DayBoundaries.reset();
+            mTimeAxis.invalidateTimeZone();
+            mSweepLeft.rebuildLabel();
+            mSweepRight.rebuildLabel();
+            mGrid.invalidateLabels();
+            mGrid.setBounds(mViewportStart, mViewportEnd);
+            mBarChart.invalidate();
+        }
+    };
+
     private OnSweepListener mHorizListener = new OnSweepListener() {
         @Override
         public void onSweep(ChartSweepView sweep, boolean sweepDone) {
@@ -229,7 +328,7 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
 
     @Override
     public boolean onTouchEvent(@NonNull MotionEvent event) {
-        if (isActivated()) return false;
+        if (isActivated()) return super.onTouchEvent(event);
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN: {
                 return true;
@@ -275,6 +374,12 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
         final long historyStart = getHistoryStart();
         final long historyEnd = getHistoryEnd();
 
+        // gestures may pan across all known history, or at least the requested range
+        mViewportStart = visibleStart;
+        mViewportEnd = visibleEnd;
+        mViewportMin = Math.min(visibleStart, historyStart);
+        mViewportMax = Math.max(visibleEnd, historyEnd);
+
         final long validStart = historyStart == Long.MAX_VALUE ? visibleStart
                 : Math.max(visibleStart, historyStart);
         final long validEnd = historyEnd == Long.MIN_VALUE ? visibleEnd
@@ -298,13 +403,53 @@ public class ChartDataUsageView extends ChartView implements ChartConstants {
 
         requestLayout();
         if (changed) {
-            mBarChart.invalidate();
+            mBarChart.invalidateBars();
         }
 
         updateVertAxisBounds(null);
         updatePrimaryRange();
     }
 
+    /**
+     * Follow a pan or zoom: children only draw the visible window, so push the new
+     * bounds to them and keep the inspection range on screen.
+     */
+    @Override
+    protected void onViewportChanged(long start, long end) {
+        mHoriz.setBounds(start, end);
+        mGrid.setBounds(start, end);
+        mBarChart.setViewportMoving(true);
+        mBarChart.setBounds(start, end);
+
+        mSweepLeft.setValidRange(start, end);
+        mSweepRight.setValidRange(start, end);
+
+        final long left = MathUtils.constrain(mSweepLeft.getValue(), start, end);
+        final long right = MathUtils.constrain(mSweepRight.getValue(), start, end);
+        if (left != mSweepLeft.getValue() || right != mSweepRight.getValue()) {
+            mSweepLeft.setValue(left);
+            mSweepRight.setValue(right);
+            mInspectRangeDirty = true;
+        }
+        layoutSweep(mSweepLeft);
+        layoutSweep(mSweepRight);
+
+        updateVertAxisBounds(null);
+        layoutSweep(mSweepAverage);
+        updatePrimaryRange();
+    }
+
+    @Override
+    protected void onViewportSettled() {
+        mBarChart.setViewportMoving(false);
+        if (mInspectRangeDirty) {
+            mInspectRangeDirty = false;
+            if (mListener != null) {
+                mListener.onInspectRangeChanged();
+            }
+        }
+    }
+
     private void updatePrimaryRange() {
         final long left = mSweepLeft.getValue();
         final long right = mSweepRight.getValue();
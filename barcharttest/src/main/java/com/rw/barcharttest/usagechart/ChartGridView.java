@@ -22,17 +22,14 @@ import static android.text.format.DateUtils.FORMAT_SHOW_DATE;
 import java.util.Locale;
 
 import android.content.Context;
-import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
 import android.text.Layout;
-import android.text.StaticLayout;
-import android.text.TextPaint;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.view.View;
 
@@ -40,7 +37,7 @@ import com.rw.barcharttest.R;
 
 /**
  * Background of {@link ChartView} that renders grid lines as requested by
- * {@link ChartAxis#getTickPoints()}.
+ * {@link ChartAxis#getTickPoints(float[])}.
  */
 public class ChartGridView extends View {
 
@@ -51,6 +48,33 @@ public class ChartGridView extends View {
     private Drawable mSecondary;
     private Drawable mBorder;
     private int mLabelColor;
+    private final TextLayoutCache.Style mLabelStyle;
+
+    // Tick buffers filled by the axes, grown as needed.
+    private float[] mHorizTicks = new float[16];
+    private float[] mVertTicks = new float[16];
+
+    /** Number of day labels kept, a power of two so days map to slots by masking. */
+    private static final int LABEL_CACHE_SIZE = 128;
+
+    private static final class Label {
+        final int epochDay;
+        final Layout layout;
+
+        Label(int epochDay, Layout layout) {
+            this.epochDay = epochDay;
+            this.layout = layout;
+        }
+    }
+
+    /*
+     * Range labels by local epoch day, so bounds that move within the same days
+     * skip the labels entirely and days seen before only cost a slot lookup.
+     * Prebuilds from other threads only ever replace one complete entry.
+     */
+    private final Label[] mLabels = new Label[LABEL_CACHE_SIZE];
+    private int mStartDay;
+    private int mEndDay;
 
     private Layout mLayoutStart;
     private Layout mLayoutEnd;
@@ -84,6 +108,11 @@ public class ChartGridView extends View {
         mDrawHorizontalLines = a.getBoolean(R.styleable.ChartGridView_drawHorizontalGridLines, true);
 
         a.recycle();
+
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        mLabelStyle = TextLayoutCache.getInstance().getStyle(mLabelColor,
+                TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 10, metrics),
+                metrics.density);
     }
 
     void init(ChartAxis horiz, ChartAxis vert) {
@@ -92,12 +121,60 @@ public class ChartGridView extends View {
     }
 
     void setBounds(long start, long end) {
-        final Context context = getContext();
-        mLayoutStart = makeLayout(formatDateRange(context, start, start));
-        mLayoutEnd = makeLayout(formatDateRange(context, end, end));
+        final int startDay = DayBoundaries.getEpochDay(start);
+        final int endDay = DayBoundaries.getEpochDay(end);
+        if (mLayoutStart == null || startDay != mStartDay || endDay != mEndDay) {
+            mStartDay = startDay;
+            mEndDay = endDay;
+            mLayoutStart = getLabel(startDay, true);
+            mLayoutEnd = getLabel(endDay, true);
+        }
         invalidate();
     }
 
+    /**
+     * Look the range labels up again on the next {@link #setBounds(long, long)},
+     * since the days the bounds fall on move with the default time zone.  The
+     * labels themselves stay valid, being keyed by day.
+     */
+    void invalidateLabels() {
+        mLayoutStart = null;
+        mLayoutEnd = null;
+    }
+
+    /**
+     * Build the label of every day between the given times ahead of time, so
+     * that panning over them with {@link #setBounds(long, long)} only looks the
+     * labels up.  Safe to call from any thread.
+     */
+    public void prebuildLabels(long start, long end) {
+        final int last = DayBoundaries.getEpochDay(end);
+        int day = Math.max(DayBoundaries.getEpochDay(start), last - LABEL_CACHE_SIZE + 1);
+        for (; day <= last; day++) {
+            getLabel(day, false);
+        }
+    }
+
+    /**
+     * Return the label of the given local epoch day, shaping it with the shared
+     * paint on the UI thread and with a copy of it on any other thread.
+     */
+    private Layout getLabel(int epochDay, boolean uiThread) {
+        final int slot = epochDay & (LABEL_CACHE_SIZE - 1);
+        final Label label = mLabels[slot];
+        if (label != null && label.epochDay == epochDay) {
+            return label.layout;
+        }
+
+        final TextLayoutCache cache = TextLayoutCache.getInstance();
+        final long dayStart = DayBoundaries.getDayStart(epochDay);
+        final String text = formatDateRange(getContext(), dayStart, dayStart);
+        final Layout layout = uiThread ? cache.getLayout(text, mLabelStyle)
+                : cache.prebuildLayout(text, mLabelStyle);
+        mLabels[slot] = new Label(epochDay, layout);
+        return layout;
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         final int width = getWidth();
@@ -107,8 +184,13 @@ public class ChartGridView extends View {
         if (mDrawHorizontalLines) {
         	final Drawable secondary = mSecondary;
         	final int secondaryHeight = mSecondary.getIntrinsicHeight();
-	        final float[] vertTicks = mVert.getTickPoints();
-	        for (float y : vertTicks) {
+	        final int count = mVert.getTickPoints(mVertTicks);
+	        if (count > mVertTicks.length) {
+	            mVertTicks = new float[count];
+	            mVert.getTickPoints(mVertTicks);
+	        }
+	        for (int i = 0; i < count; i++) {
+	            final float y = mVertTicks[i];
 	            final int bottom = (int) Math.min(y + secondaryHeight, height);
 	            secondary.setBounds(0, (int) y, width, bottom);
 	            secondary.draw(canvas);
@@ -119,8 +201,13 @@ public class ChartGridView extends View {
         if (mDrawVertialLines) {
         	final Drawable primary = mPrimary;
         	final int primaryWidth = mPrimary.getIntrinsicWidth();
-	        final float[] horizTicks = mHoriz.getTickPoints();
-	        for (float x : horizTicks) {
+	        final int count = mHoriz.getTickPoints(mHorizTicks);
+	        if (count > mHorizTicks.length) {
+	            mHorizTicks = new float[count];
+	            mHoriz.getTickPoints(mHorizTicks);
+	        }
+	        for (int i = 0; i < count; i++) {
+	            final float x = mHorizTicks[i];
 	            final int right = (int) Math.min(x + primaryWidth, width);
 	            primary.setBounds((int) x, 0, right, height);
 	            primary.draw(canvas);
@@ -151,19 +238,6 @@ public class ChartGridView extends View {
         }
     }
 
-    private Layout makeLayout(CharSequence text) {
-        final Resources res = getResources();
-        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-        paint.density = res.getDisplayMetrics().density;
-        paint.setColor(mLabelColor);
-        paint.setTextSize(
-                TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 10, res.getDisplayMetrics()));
-
-        return new StaticLayout(text, paint,
-                (int) Math.ceil(Layout.getDesiredWidth(text, paint)),
-                Layout.Alignment.ALIGN_NORMAL, 1.f, 0, true);
-    }
-
     private static final StringBuilder sBuilder = new StringBuilder(50);
     private static final java.util.Formatter sFormatter = new java.util.Formatter(
             sBuilder, Locale.getDefault());
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rw.barcharttest.usagechart;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.text.format.DateUtils;
+
+/**
+ * Derives coarser series, such as weekly or monthly totals, from a fine
+ * grained {@link ChartData}.  Each series is built on first request and then
+ * kept current as entries are added to or updated in the source: only the
+ * buckets covering the changed entries are recomputed.  Series of data split
+ * across several series keep the split, summing each series over the entries
+ * of a bucket.
+ * 
+ * The summing runs on a shared background thread.  On a change the samples
+ * from the start of the first affected bucket are copied, which is a plain
+ * array copy, and the finished buckets are posted back to the main thread,
+ * where they are written into the series in order.  A series therefore
+ * starts out empty and lags the source by one round trip; views bound to it
+ * follow along through its change listener.
+ * 
+ * Bucket boundaries follow the local calendar.  They are computed from the
+ * instant with {@link DayBoundaries}, hours being whole hours from the start of
+ * their day, so the repeated hour when clocks fall back and days whose
+ * midnight is skipped still cover every sample.  Like the source, use it from
+ * the main thread only.
+ */
+public class ChartRollup {
+
+	public static final int RESOLUTION_HOUR = 0;
+	public static final int RESOLUTION_DAY = 1;
+	public static final int RESOLUTION_WEEK = 2;
+	public static final int RESOLUTION_MONTH = 3;
+	public static final int RESOLUTION_BILLING_CYCLE = 4;
+
+	private static final int RESOLUTION_COUNT = 5;
+
+	// Shared by every rollup; a single thread keeps the updates of each in order.
+	private static Handler worker;
+
+	private final ChartData source;
+	private final ChartData[] series = new ChartData[RESOLUTION_COUNT];
+	private final int firstDayOfWeek = Calendar.getInstance().getFirstDayOfWeek();
+	private final Handler main = new Handler(Looper.getMainLooper());
+
+	private int billingCycleDay = 1;
+	private boolean released;
+
+	public ChartRollup(ChartData source) {
+		this.source = Preconditions.checkNotNull(source, "missing source");
+		source.addOnChangeListener(mSourceListener);
+	}
+
+	/**
+	 * Stop following the source.  Series already handed out stay valid but
+	 * are no longer updated, not even by rollups still in flight.
+	 */
+	public void release() {
+		source.removeOnChangeListener(mSourceListener);
+		released = true;
+	}
+
+	/**
+	 * Set the day of the month on which the billing cycle starts.  Days past
+	 * the end of a short month start the cycle on its last day.
+	 */
+	public void setBillingCycleDay(int day) {
+		if (day < 1 || day > 31) {
+			throw new IllegalArgumentException("Invalid billing cycle day " + day);
+		}
+		if (billingCycleDay != day) {
+			billingCycleDay = day;
+			series[RESOLUTION_BILLING_CYCLE] = null;
+		}
+	}
+
+	/**
+	 * Return the series for the given resolution.  On first use it is returned
+	 * empty and filled in once the rollup comes back from the worker.
+	 */
+	public ChartData getSeries(int resolution) {
+		checkResolution(resolution);
+		if (series[resolution] == null) {
+			final ChartData rollup = new ChartData(Math.max(source.size() / 4, 1),
+					source.getSeriesCount());
+			rollup.setBucketDuration(getNominalDuration(resolution));
+			series[resolution] = rollup;
+			schedule(1 << resolution, 0);
+		}
+		return series[resolution];
+	}
+
+	/**
+	 * Start of the bucket that holds the given time.
+	 */
+	public long getBucketStart(int resolution, long time) {
+		checkResolution(resolution);
+		return getBucketStart(resolution, time, billingCycleDay);
+	}
+
+	/**
+	 * Start of the bucket following the one that starts at the given time.
+	 */
+	public long getNextBucketStart(int resolution, long bucketStart) {
+		checkResolution(resolution);
+		return getNextBucketStart(resolution, bucketStart, billingCycleDay);
+	}
+
+	// The bucket helpers below take the billing cycle day rather than reading
+	// the field, so the worker can use them with the day of its snapshot.
+
+	private long getBucketStart(int resolution, long time, int cycleDay) {
+		if (resolution == RESOLUTION_HOUR) {
+			return getHourStart(time);
+		}
+		return DayBoundaries.getDayStart(getBucketStartDay(resolution,
+				DayBoundaries.getEpochDay(time), cycleDay));
+	}
+
+	private static long getNextBucketStart(int resolution, long bucketStart, int cycleDay) {
+		final int day = DayBoundaries.getEpochDay(bucketStart);
+		switch (resolution) {
+			case RESOLUTION_HOUR:
+				// The last hour of a day shortened by half an hour is cut short too.
+				return Math.min(bucketStart + DateUtils.HOUR_IN_MILLIS,
+						DayBoundaries.getDayStart(day + 1));
+			case RESOLUTION_WEEK:
+				return DayBoundaries.getDayStart(day + 7);
+			case RESOLUTION_MONTH:
+				return DayBoundaries.getDayStart(getMonthStartDay(
+						DayBoundaries.getYear(day), DayBoundaries.getMonth(day) + 1));
+			case RESOLUTION_BILLING_CYCLE:
+				return DayBoundaries.getDayStart(getCycleStartDay(
+						DayBoundaries.getYear(day), DayBoundaries.getMonth(day) + 1, cycleDay));
+			default:
+				return DayBoundaries.getDayStart(day + 1);
+		}
+	}
+
+	/**
+	 * Start of the hour holding the given time, counting whole hours from the
+	 * start of its local day.  Days with a DST change simply have more or
+	 * fewer hours, so each of the two hours repeated when clocks fall back is
+	 * its own bucket.
+	 */
+	private static long getHourStart(long time) {
+		final long dayStart = DayBoundaries.getDayStart(DayBoundaries.getEpochDay(time));
+		return time - (time - dayStart) % DateUtils.HOUR_IN_MILLIS;
+	}
+
+	/**
+	 * Epoch day that starts the bucket holding the given epoch day.
+	 */
+	private int getBucketStartDay(int resolution, int day, int cycleDay) {
+		switch (resolution) {
+			case RESOLUTION_WEEK:
+				return day - (int) DayBoundaries.floorMod(
+						DayBoundaries.getDayOfWeek(day) - firstDayOfWeek, 7);
+			case RESOLUTION_MONTH:
+				return getMonthStartDay(DayBoundaries.getYear(day), DayBoundaries.getMonth(day));
+			case RESOLUTION_BILLING_CYCLE: {
+				final int year = DayBoundaries.getYear(day);
+				final int month = DayBoundaries.getMonth(day);
+				final int cycleStart = getCycleStartDay(year, month, cycleDay);
+				return day >= cycleStart ? cycleStart
+						: getCycleStartDay(year, month - 1, cycleDay);
+			}
+			default:
+				return day;
+		}
+	}
+
+	/**
+	 * Epoch day of the first of the given month, which may be past either end
+	 * of the year.
+	 */
+	private static int getMonthStartDay(int year, int month) {
+		return DayBoundaries.getEpochDay(year + (int) DayBoundaries.floorDiv(month, 12),
+				(int) DayBoundaries.floorMod(month, 12), 1);
+	}
+
+	/**
+	 * Epoch day the billing cycle starts on in the given month, which may be
+	 * past either end of the year.
+	 */
+	private static int getCycleStartDay(int year, int month, int cycleDay) {
+		final int first = getMonthStartDay(year, month);
+		final int length = getMonthStartDay(year, month + 1) - first;
+		return first + Math.min(cycleDay, length) - 1;
+	}
+
+	private ChartData.OnChangeListener mSourceListener = new ChartData.OnChangeListener() {
+		@Override
+		public void onChartDataChanged(ChartData data, int fromIndex, int toIndex) {
+			int resolutions = 0;
+			for (int resolution = 0; resolution < RESOLUTION_COUNT; resolution++) {
+				if (series[resolution] != null) {
+					resolutions |= 1 << resolution;
+				}
+			}
+			if (resolutions != 0) {
+				schedule(resolutions, fromIndex);
+			}
+		}
+	};
+
+	/**
+	 * Hand the buckets of the given resolutions, from the one holding the
+	 * source entry at the given index onwards, to the worker.
+	 */
+	private void schedule(int resolutions, int fromIndex) {
+		if (fromIndex >= source.size()) {
+			return;
+		}
+		if (worker == null) {
+			final HandlerThread thread = new HandlerThread("ChartRollup",
+					Process.THREAD_PRIORITY_BACKGROUND);
+			thread.start();
+			worker = new Handler(thread.getLooper());
+		}
+		worker.post(new Rollup(resolutions, fromIndex));
+	}
+
+	/**
+	 * One round trip to the worker: built on the main thread with a copy of
+	 * the samples it needs, summed on the worker, applied on the main thread.
+	 */
+	private final class Rollup implements Runnable {
+		private final int resolutions;
+		private final long fromDate;
+		private final int cycleDay = billingCycleDay;
+		private final long start = source.getStart();
+		private final long end = source.getEnd();
+		private final ChartData[] targets = series.clone();
+
+		private final int seriesCount = source.getSeriesCount();
+		private final int count;
+		private final long[] dates;
+		// Values of each sample, seriesCount at a time.
+		private final long[] values;
+
+		private final long[][] bucketStarts = new long[RESOLUTION_COUNT][];
+		private final long[][] bucketValues = new long[RESOLUTION_COUNT][];
+		private final int[] bucketCounts = new int[RESOLUTION_COUNT];
+
+		Rollup(int resolutions, int fromIndex) {
+			this.resolutions = resolutions;
+			fromDate = source.getDate(fromIndex);
+
+			// Copy from the first entry of the earliest bucket that changes.
+			int first = fromIndex;
+			for (int resolution = 0; resolution < RESOLUTION_COUNT; resolution++) {
+				if ((resolutions & 1 << resolution) != 0) {
+					first = Math.min(first, source.getIndexBefore(
+							getBucketStart(resolution, fromDate, cycleDay)));
+				}
+			}
+
+			count = source.size() - first;
+			dates = new long[count];
+			values = new long[count * seriesCount];
+			for (int i = 0; i < count; i++) {
+				dates[i] = source.getDate(first + i);
+				if (seriesCount > 1) {
+					for (int s = 0; s < seriesCount; s++) {
+						values[i * seriesCount + s] = source.getSeriesBytes(s, first + i);
+					}
+				} else {
+					values[i] = source.getTotalBytes(first + i);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			for (int resolution = 0; resolution < RESOLUTION_COUNT; resolution++) {
+				if ((resolutions & 1 << resolution) != 0) {
+					sum(resolution);
+				}
+			}
+			main.post(new Runnable() {
+				@Override
+				public void run() {
+					apply();
+				}
+			});
+		}
+
+		/**
+		 * Sum the copied samples into buckets, skipping those before the bucket
+		 * that holds the first changed entry; empty buckets are left out.
+		 */
+		private void sum(int resolution) {
+			long[] starts = new long[8];
+			long[] sums = new long[starts.length * seriesCount];
+			int n = 0;
+
+			final long from = getBucketStart(resolution, fromDate, cycleDay);
+			int i = 0;
+			while (i < count && dates[i] < from) {
+				i++;
+			}
+			while (i < count) {
+				if (n == starts.length) {
+					starts = Arrays.copyOf(starts, n * 2);
+					sums = Arrays.copyOf(sums, n * 2 * seriesCount);
+				}
+				final long bucketStart = getBucketStart(resolution, dates[i], cycleDay);
+				final long next = getNextBucketStart(resolution, bucketStart, cycleDay);
+				final int offset = n * seriesCount;
+				for (; i < count && dates[i] < next; i++) {
+					for (int s = 0; s < seriesCount; s++) {
+						sums[offset + s] += values[i * seriesCount + s];
+					}
+				}
+				starts[n++] = bucketStart;
+			}
+
+			bucketStarts[resolution] = starts;
+			bucketValues[resolution] = sums;
+			bucketCounts[resolution] = n;
+		}
+
+		/**
+		 * Write the buckets into the series they were summed for, unless that
+		 * series has since been dropped or the rollup released.
+		 */
+		private void apply() {
+			if (released) {
+				return;
+			}
+			final long[] row = seriesCount > 1 ? new long[seriesCount] : null;
+			for (int resolution = 0; resolution < RESOLUTION_COUNT; resolution++) {
+				final ChartData rollup = targets[resolution];
+				if ((resolutions & 1 << resolution) == 0 || rollup != series[resolution]) {
+					continue;
+				}
+				final long[] starts = bucketStarts[resolution];
+				final long[] sums = bucketValues[resolution];
+				for (int b = 0; b < bucketCounts[resolution]; b++) {
+					if (row != null) {
+						System.arraycopy(sums, b * seriesCount, row, 0, seriesCount);
+						rollup.upsert(starts[b], row);
+					} else {
+						rollup.upsert(starts[b], sums[b]);
+					}
+				}
+				rollup.setStart(start);
+				rollup.setEnd(end);
+			}
+		}
+	}
+
+	private static long getNominalDuration(int resolution) {
+		switch (resolution) {
+			case RESOLUTION_HOUR:
+				return DateUtils.HOUR_IN_MILLIS;
+			case RESOLUTION_WEEK:
+				return DateUtils.WEEK_IN_MILLIS;
+			case RESOLUTION_MONTH:
+			case RESOLUTION_BILLING_CYCLE:
+				return DateUtils.DAY_IN_MILLIS * 30;
+			default:
+				return DateUtils.DAY_IN_MILLIS;
+		}
+	}
+
+	private static void checkResolution(int resolution) {
+		if (resolution < 0 || resolution >= RESOLUTION_COUNT) {
+			throw new IllegalArgumentException("Invalid resolution " + resolution);
+		}
+	}
+
+}
@@ -24,7 +24,6 @@ import android.graphics.Paint;
 import android.graphics.Paint.Style;
 import android.graphics.Point;
 import android.graphics.Rect;
-import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.text.DynamicLayout;
 import android.text.Layout;
@@ -72,10 +71,28 @@ public class ChartSweepView extends View implements ChartSweep {
     private SpannableStringBuilder mLabelTemplate;
     private DynamicLayout mLabelLayout;
 
+    /** What {@link #mLabelLayout} was built from, to skip rebuilding it unchanged. */
+    private TextLayoutCache.Style mLabelStyle;
+    private int mLabelLayoutRes;
+    private int mLabelLayoutAxis;
+
     private ChartAxis mAxis;
     private long mValue;
     private long mLabelValue;
 
+    /** Label bucket of the value the current label was built for. */
+    private long mLabelBucket;
+    private boolean mLabelBuilt;
+    /** Desired width of the current label text. */
+    private float mLabelWidth;
+
+    /** Label placement being worked out by {@link ChartView#layoutSweepLabels()}. */
+    private float mPendingLabelOffset;
+    private float mPendingLabelSize;
+    private boolean mPendingLabelPushed;
+    /** Whether a neighbor's label pushed this one from where it would sit. */
+    private boolean mLabelPushed;
+
     private long mValidAfter;
     private long mValidBefore;
     private ChartSweepView mValidAfterDynamic;
@@ -87,6 +104,12 @@ public class ChartSweepView extends View implements ChartSweep {
     private float mLabelRight;
 
     private Paint mOutlinePaint = new Paint();
+    private final Paint mFlagPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // Scratch rects reused while dragging.
+    private final Rect mParentContent = new Rect();
+    private final Rect mClampRect = new Rect();
+    private final Rect mDynamicClampRect = new Rect();
 
     public static final int HORIZONTAL = 0;
     public static final int VERTICAL = 1;
@@ -98,6 +121,7 @@ public class ChartSweepView extends View implements ChartSweep {
     private static final int MODE_LABEL = 2;
 
     private static final int LARGE_WIDTH = 1024;
+    private static final float LABEL_TEXT_SIZE = 25;
 
     private long mDragInterval = 1;
 
@@ -109,7 +133,8 @@ public class ChartSweepView extends View implements ChartSweep {
     private OnSweepListener mListener;
 
     private float mTrackingStart;
-    private MotionEvent mTracking;
+    private float mTrackingRawX;
+    private float mTrackingRawY;
 
     private ChartSweepView[] mNeighbors = new ChartSweepView[0];
 
@@ -132,8 +157,8 @@ public class ChartSweepView extends View implements ChartSweep {
         setNeighborMargin(a.getDimensionPixelSize(R.styleable.ChartSweepView_neighborMargin, 0));
 
         setLabelMinSize(a.getDimensionPixelSize(R.styleable.ChartSweepView_labelSize, 0));
-        setLabelTemplate(a.getResourceId(R.styleable.ChartSweepView_labelTemplate, 0));
         setLabelColor(a.getColor(R.styleable.ChartSweepView_labelColor, Color.BLUE));
+        setLabelTemplate(a.getResourceId(R.styleable.ChartSweepView_labelTemplate, 0));
         setFlagBackgroundColor(a.getColor(R.styleable.ChartSweepView_flagBackgroundColor,
                 Color.rgb(237, 238, 237))); // light gray
         setBackgroundResource(R.drawable.data_usage_sweep_background);
@@ -243,7 +268,8 @@ public class ChartSweepView extends View implements ChartSweep {
 
     public void setLabelMinSize(int minSize) {
         mLabelMinSize = minSize;
-        invalidateLabelTemplate();
+        invalidateLabelOffset();
+        requestLayout();
     }
 
     public void setLabelTemplate(int resId) {
@@ -258,17 +284,23 @@ public class ChartSweepView extends View implements ChartSweep {
 
     public void setFlagBackgroundColor(int color) {
         mFlagBackgroundColor = color;
-        invalidateLabelTemplate();
+        mFlagPaint.setColor(color);
+        invalidate();
     }
 
     private void invalidateLabelTemplate() {
         if (mLabelTemplateRes != 0) {
-            final CharSequence template = getResources().getText(mLabelTemplateRes);
+            // paints are shared through the layout cache rather than made per template
+            final TextLayoutCache cache = TextLayoutCache.getInstance();
+            final TextLayoutCache.Style style = cache.getStyle(
+                    mLabelColor, LABEL_TEXT_SIZE, getResources().getDisplayMetrics().density);
+            if (mLabelLayout != null && mLabelLayoutRes == mLabelTemplateRes
+                    && mLabelStyle == style && mLabelLayoutAxis == mFollowAxis) {
+                return;
+            }
 
-            final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
-            paint.density = getResources().getDisplayMetrics().density;
-            paint.setColor(mLabelColor);
-            paint.setTextSize(25);
+            final CharSequence template = getResources().getText(mLabelTemplateRes);
+            final TextPaint paint = style.getPaint();
 
             mLabelTemplate = new SpannableStringBuilder(template);
             
@@ -277,109 +309,220 @@ public class ChartSweepView extends View implements ChartSweep {
 				        LARGE_WIDTH, Alignment.ALIGN_NORMAL, 1f, 0f, false);
 			} else {
 				mLabelLayout = new DynamicLayout(mLabelTemplate, paint,
-				        (int) (paint.measureText(template.toString())),
+				        (int) cache.getWidth(template, style),
 				        Alignment.ALIGN_CENTER, 1f, 0f, false);
 			}
+            mLabelStyle = style;
+            mLabelLayoutRes = mLabelTemplateRes;
+            mLabelLayoutAxis = mFollowAxis;
             invalidateLabel();
 
         } else {
             mLabelTemplate = null;
             mLabelLayout = null;
+            mLabelStyle = null;
+            mLabelBuilt = false;
         }
 
         invalidate();
         requestLayout();
     }
 
+    /**
+     * Rebuild the label text even if the value stays in the same label bucket,
+     * such as when the buckets themselves moved.
+     */
+    public void rebuildLabel() {
+        invalidateLabel();
+    }
+
     private void invalidateLabel() {
         if (mLabelTemplate != null && mAxis != null) {
             mLabelValue = mAxis.buildLabel(getResources(), mLabelTemplate, mValue);
+            mLabelBucket = mAxis.getLabelBucket(mValue);
+            mLabelBuilt = true;
+            mLabelWidth = Layout.getDesiredWidth(mLabelTemplate, mLabelLayout.getPaint());
             setContentDescription(mLabelTemplate);
             invalidateLabelOffset();
             invalidate();
         } else {
             mLabelValue = mValue;
+            mLabelBuilt = false;
         }
     }
 
     /**
-     * When overlapping with neighbor, split difference and push label.
+     * Re-place this label after its text or position changed.  Labels of all the
+     * sweeps in a {@link ChartView} are placed together so overlapping neighbors
+     * push each other apart in one pass.
      */
     public void invalidateLabelOffset() {
-    	/*
-    	 *  NOTE: mValidAfterDynamic and mValidBeforeDynamic are references to the sweeps
-    	 *  on either side of this sweep.
-    	 */
-        float margin;
-        float labelOffset = 0;
-        if (mFollowAxis == VERTICAL) {
-            if (mValidAfterDynamic != null) {
-                mLabelSize = Math.max(getLabelWidth(this), getLabelWidth(mValidAfterDynamic));
-                margin = getLabelTop(mValidAfterDynamic) - getLabelBottom(this);
-                if (margin < 0) {
-                    labelOffset = margin / 2;
-                }
-            } else if (mValidBeforeDynamic != null) {
-                mLabelSize = Math.max(getLabelWidth(this), getLabelWidth(mValidBeforeDynamic));
-                margin = getLabelTop(this) - getLabelBottom(mValidBeforeDynamic);
-                if (margin < 0) {
-                    labelOffset = -margin / 2;
-                }
-            } else {
-                mLabelSize = getLabelWidth(this);
+        final Object parent = getParent();
+        if (parent instanceof ChartView) {
+            ((ChartView) parent).layoutSweepLabels();
+        } else {
+            resetLabelPlacement(null, null);
+            applyLabelPlacement();
+        }
+    }
+
+    /**
+     * Follow a move that kept the label text.  The label only needs placing again
+     * if a neighbor pushed it, or it pushed a neighbor, or it now comes within the
+     * margin of a neighbor's label; otherwise it simply rides along with the sweep.
+     * Placing it again only involves the sweeps on its own axis.
+     */
+    private void invalidateLabelPosition() {
+        if (!mLabelPushed && clearsNeighborLabels()) {
+            updateLabelBounds();
+            return;
+        }
+
+        final Object parent = getParent();
+        if (parent instanceof ChartView) {
+            ((ChartView) parent).layoutSweepLabels(mFollowAxis);
+        } else {
+            resetLabelPlacement(null, null);
+            applyLabelPlacement();
+        }
+    }
+
+    /**
+     * Return whether the label, where it is currently placed, keeps at least the
+     * label margin from the unpushed labels of all neighbors on the same axis.
+     */
+    private boolean clearsNeighborLabels() {
+        if (mLabelLayout == null) {
+            return true;
+        }
+        for (ChartSweepView neighbor : mNeighbors) {
+            if (neighbor.mFollowAxis != mFollowAxis || !neighbor.hasLabel()) continue;
+            if (neighbor.mLabelPushed) return false;
+
+            final float margin = Math.max(getLabelMargin(), neighbor.getLabelMargin());
+            final boolean before = mFollowAxis == VERTICAL
+                    ? neighbor.getY() < getY() : neighbor.getX() < getX();
+            final float gap = before
+                    ? getLabelStart() - neighbor.getLabelEnd()
+                    : neighbor.getLabelStart() - getLabelEnd();
+            if (gap < margin) return false;
+        }
+        return true;
+    }
+
+    boolean hasLabel() {
+        return mLabelLayout != null;
+    }
+
+    boolean isNeighbor(ChartSweepView sweep) {
+        for (ChartSweepView neighbor : mNeighbors) {
+            if (neighbor == sweep) {
+                return true;
             }
+        }
+        return false;
+    }
+
+    /**
+     * Put the label where it sits without being pushed, flagged toward whichever
+     * neighbors are beside it.  Either neighbor may be null.
+     */
+    void resetLabelPlacement(ChartSweepView before, ChartSweepView after) {
+        mPendingLabelOffset = 0;
+        mPendingLabelSize = mLabelWidth;
+        mPendingLabelPushed = false;
+        if (mLabelLayout == null) {
+            return;
+        }
+
+        if (mFollowAxis == VERTICAL) {
+            // neighboring labels share a width so their sweep lines start together
+            if (before != null) mPendingLabelSize = Math.max(mPendingLabelSize, before.mLabelWidth);
+            if (after != null) mPendingLabelSize = Math.max(mPendingLabelSize, after.mLabelWidth);
+        } else if (before != null) {
+            // There is a sweep to the left of this sweep.
+            mPendingLabelOffset = mContentOffset.left - mLabelLayout.getWidth()
+                    + mSweepPadding.left + 4;
+        } else if (after != null) {
+            // There is a sweep to the right of this sweep.
+            mPendingLabelOffset = mContentOffset.left + mSweepPadding.left;
         } else {
-			// Calculate the offset of the time axis labels.
-			if (mLabelLayout != null) {
-				mLabelSize = getLabelWidth(this);
-
-				/*
-				 * Calculate the label offset so that the label is drawn in the
-				 * direction of the other sweep. If the sweeps get too close,
-				 * then push the label to the outside so that they don't
-				 * overlap.
-				 */
-				labelOffset = getLabelLeft(this);
-				if (mValidAfterDynamic != null) {
-					// There is a sweep to the left of this sweep.
-					// If this label overlaps, push this offset to the right.
-					margin = (labelOffset + getX())
-					        - (getLabelRight(mValidAfterDynamic) + mValidAfterDynamic.getX()) 
-					        - mLabelMargin;
-					if (margin < 0) {
-						labelOffset += -margin / 2;
-					}
-
-				} else if (mValidBeforeDynamic != null) {
-					// There is a sweep to the right of this sweep.
-					// If this label overlaps, push this offset to the left.
-					margin = (getLabelLeft(mValidBeforeDynamic) + mValidBeforeDynamic.getX())
-					        - (labelOffset + mLabelLayout.getWidth() + getX())
-					        - mLabelMargin;
-					if (margin < 0) {
-						labelOffset -= -margin / 2;
-					}
-
-				} else {
-					// Center the label. This should be the only sweep.
-					labelOffset = (getWidth() - mLabelLayout.getWidth()) / 2;
-				}
-			}
+            // Center the label.
+            mPendingLabelOffset = (getWidth() - mLabelLayout.getWidth()) / 2;
         }
+    }
 
-        mLabelSize = Math.max(mLabelSize, mLabelMinSize);
+    /**
+     * Return where the pending label starts along the follow axis, in parent
+     * coordinates.
+     */
+    float getPendingLabelStart() {
+        return getLabelStart(mPendingLabelOffset);
+    }
 
-        // when offsetting label, neighbor probably needs to offset too
-        if (labelOffset != mLabelLeft) {
-            mLabelLeft = labelOffset;
+    float getPendingLabelEnd() {
+        return getPendingLabelStart() + getLabelLength();
+    }
+
+    /**
+     * Return where the placed label starts and ends along the follow axis, in
+     * parent coordinates.
+     */
+    private float getLabelStart() {
+        return getLabelStart(mLabelLeft);
+    }
+
+    private float getLabelEnd() {
+        return getLabelStart() + getLabelLength();
+    }
+
+    private float getLabelStart(float offset) {
+        if (mFollowAxis == VERTICAL) {
+            return getY() + mContentOffset.top + offset;
+        } else {
+            return getX() + offset;
+        }
+    }
+
+    private float getLabelLength() {
+        return mLabelLayout == null ? 0
+                : mFollowAxis == VERTICAL ? mLabelLayout.getHeight() : mLabelLayout.getWidth();
+    }
+
+    /**
+     * Return the gap to keep between this label and the next along the follow axis.
+     */
+    float getLabelMargin() {
+        return mFollowAxis == VERTICAL ? 0 : mLabelMargin;
+    }
+
+    void offsetPendingLabel(float delta) {
+        mPendingLabelOffset += delta;
+        mPendingLabelPushed = true;
+    }
+
+    /**
+     * Adopt the pending placement, invalidating only when it moved.
+     */
+    void applyLabelPlacement() {
+        final float size = Math.max(mPendingLabelSize, mLabelMinSize);
+        if (mPendingLabelOffset != mLabelLeft || size != mLabelSize) {
+            mLabelLeft = mPendingLabelOffset;
+            mLabelSize = size;
+            invalidate();
+        }
+        mLabelPushed = mPendingLabelPushed;
+        updateLabelBounds();
+    }
+
+    /**
+     * Update the touch area of the label, which follows the sweep.
+     */
+    private void updateLabelBounds() {
+        if (mLabelLayout != null) {
             mLabelRight = mLabelLeft + mLabelLayout.getWidth();
-            mLabelTop = getLabelTop(this);
+            mLabelTop = getY() + mContentOffset.top;
             mLabelBottom = mLabelTop + mLabelLayout.getHeight();
-            invalidate();
-            
-            // Notify surrounding sweeps if they are set.
-            if (mValidAfterDynamic != null) mValidAfterDynamic.invalidateLabelOffset();
-            if (mValidBeforeDynamic != null) mValidBeforeDynamic.invalidateLabelOffset();
         }
     }
 
@@ -410,6 +553,14 @@ public class ChartSweepView extends View implements ChartSweep {
 
     public void setValue(long value) {
         mValue = value;
+
+        // Within the same bucket the label text can't change, so only follow the
+        // new position instead of rebuilding the label.
+        if (mLabelBuilt && mAxis.getLabelBucket(value) == mLabelBucket) {
+            mLabelValue = mAxis.roundLabelValue(value);
+            invalidateLabelPosition();
+            return;
+        }
         invalidateLabel();
     }
 
@@ -460,16 +611,20 @@ public class ChartSweepView extends View implements ChartSweep {
      * {@link ChartSweepView} compared to ourselves.
      */
     public boolean isTouchCloserTo(MotionEvent eventInParent, ChartSweepView another) {
-        final float selfDist = getTouchDistanceFromTarget(eventInParent);
-        final float anotherDist = another.getTouchDistanceFromTarget(eventInParent);
+        return isTouchCloserTo(eventInParent.getX(), eventInParent.getY(), another);
+    }
+
+    private boolean isTouchCloserTo(float xInParent, float yInParent, ChartSweepView another) {
+        final float selfDist = getTouchDistanceFromTarget(xInParent, yInParent);
+        final float anotherDist = another.getTouchDistanceFromTarget(xInParent, yInParent);
         return anotherDist < selfDist;
     }
 
-    private float getTouchDistanceFromTarget(MotionEvent eventInParent) {
+    private float getTouchDistanceFromTarget(float xInParent, float yInParent) {
         if (mFollowAxis == HORIZONTAL) {
-            return Math.abs(eventInParent.getX() - (getX() + getTargetInset()));
+            return Math.abs(xInParent - (getX() + getTargetInset()));
         } else {
-            return Math.abs(eventInParent.getY() - (getY() + getTargetInset()));
+            return Math.abs(yInParent - (getY() + getTargetInset()));
         }
     }
 
@@ -493,12 +648,12 @@ public class ChartSweepView extends View implements ChartSweep {
                 	acceptLabel = false;
                 }
 
-                final MotionEvent eventInParent = MotionEvent.obtain(event);
-                eventInParent.offsetLocation(getLeft(), getTop());
+                final float xInParent = event.getX() + getLeft();
+                final float yInParent = event.getY() + getTop();
 
                 // ignore event when closer to a neighbor
                 for (ChartSweepView neighbor : mNeighbors) {
-                    if (isTouchCloserTo(eventInParent, neighbor)) {
+                    if (isTouchCloserTo(xInParent, yInParent, neighbor)) {
                         return false;
                     }
                 }
@@ -510,7 +665,8 @@ public class ChartSweepView extends View implements ChartSweep {
                         mTrackingStart = getLeft() - mMargins.left;
                     }
                     
-                    mTracking = MotionEvent.obtain(event);
+                    mTrackingRawX = event.getRawX();
+                    mTrackingRawY = event.getRawY();
                     mTouchMode = MODE_DRAG;
 
                     // starting drag should activate entire chart
@@ -543,7 +699,7 @@ public class ChartSweepView extends View implements ChartSweep {
                 if (mFollowAxis == VERTICAL) {
                     final float currentTargetY = getTop() - mMargins.top;
                     final float requestedTargetY = mTrackingStart
-                            + (event.getRawY() - mTracking.getRawY());
+                            + (event.getRawY() - mTrackingRawY);
                     final float clampedTargetY = MathUtils.constrain(
                             requestedTargetY, clampRect.top, clampRect.bottom);
                     setTranslationY(clampedTargetY - currentTargetY);
@@ -552,7 +708,7 @@ public class ChartSweepView extends View implements ChartSweep {
                 } else {
                     final float currentTargetX = getLeft() - mMargins.left;
                     final float requestedTargetX = mTrackingStart
-                            + (event.getRawX() - mTracking.getRawX());
+                            + (event.getRawX() - mTrackingRawX);
                     final float clampedTargetX = MathUtils.constrain(
                             requestedTargetX, clampRect.left, clampRect.right);
                     setTranslationX(clampedTargetX - currentTargetX);
@@ -572,12 +728,17 @@ public class ChartSweepView extends View implements ChartSweep {
                     performClick();
                 } else if (mTouchMode == MODE_DRAG) {
                     mTrackingStart = 0;
-                    mTracking = null;
                     mValue = mLabelValue;
                     dispatchOnSweep(true);
                     setTranslationX(0);
                     setTranslationY(0);
-                    requestLayout();
+
+                    // Only this sweep moved, so skip laying out the whole chart.
+                    if (parent instanceof ChartView) {
+                        ((ChartView) parent).layoutSweep(this);
+                    } else {
+                        requestLayout();
+                    }
                 }
 
                 mTouchMode = MODE_NONE;
@@ -630,9 +791,10 @@ public class ChartSweepView extends View implements ChartSweep {
 
     private Rect getParentContentRect() {
         final View parent = (View) getParent();
-        return new Rect(parent.getPaddingLeft(), parent.getPaddingTop(),
+        mParentContent.set(parent.getPaddingLeft(), parent.getPaddingTop(),
                 parent.getWidth() - parent.getPaddingRight(),
                 parent.getHeight() - parent.getPaddingBottom());
+        return mParentContent;
     }
 
     @Override
@@ -662,9 +824,10 @@ public class ChartSweepView extends View implements ChartSweep {
      */
     private Rect computeClampRect(Rect parentContent) {
         // create two rectangles, and pick most restrictive combination
-        final Rect rect = buildClampRect(parentContent, mValidAfter, mValidBefore, 0f);
-        final Rect dynamicRect = buildClampRect(
-                parentContent, getValidAfterDynamic(), getValidBeforeDynamic(), mNeighborMargin);
+        final Rect rect = buildClampRect(mClampRect, parentContent,
+                mValidAfter, mValidBefore, 0f);
+        final Rect dynamicRect = buildClampRect(mDynamicClampRect, parentContent,
+                getValidAfterDynamic(), getValidBeforeDynamic(), mNeighborMargin);
 
         if (!rect.intersect(dynamicRect)) {
             rect.setEmpty();
@@ -672,7 +835,7 @@ public class ChartSweepView extends View implements ChartSweep {
         return rect;
     }
 
-    private Rect buildClampRect(
+    private Rect buildClampRect(Rect clampRect,
             Rect parentContent, long afterValue, long beforeValue, float margin) {
         if (mAxis instanceof InvertedChartAxis) {
             long temp = beforeValue;
@@ -686,7 +849,7 @@ public class ChartSweepView extends View implements ChartSweep {
         final float afterPoint = mAxis.convertToPoint(afterValue) + margin;
         final float beforePoint = mAxis.convertToPoint(beforeValue) - margin;
 
-        final Rect clampRect = new Rect(parentContent);
+        clampRect.set(parentContent);
         if (mFollowAxis == VERTICAL) {
             if (beforeValid) clampRect.bottom = clampRect.top + (int) beforePoint;
             if (afterValid) clampRect.top += afterPoint;
@@ -811,9 +974,7 @@ public class ChartSweepView extends View implements ChartSweep {
 		            float top = mContentOffset.top;
 		            float right = left + mLabelLayout.getWidth();
 		            float bottom = top + mLabelLayout.getHeight();
-		            final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-		            paint.setColor(mFlagBackgroundColor);
-		            canvas.drawRect(new RectF(left,top,right,bottom), paint);
+		            canvas.drawRect(left, top, right, bottom, mFlagPaint);
 	            }
 	            
 	            if (mFollowAxis == VERTICAL) {
@@ -834,59 +995,5 @@ public class ChartSweepView extends View implements ChartSweep {
             canvas.drawRect(0, 0, width, height, mOutlinePaint);
         }
     }
-    
-    public static float getLabelTop(ChartSweepView view) {
-        return view.getY() + view.mContentOffset.top;
-    }
-
-    public static float getLabelBottom(ChartSweepView view) {
-    	float bottom = 0;
-    	if (view.mLabelLayout != null) {
-    		bottom = getLabelTop(view) + view.mLabelLayout.getHeight();
-    	}
-    	return bottom;
-    }
-
-    public static float getLabelWidth(ChartSweepView view) {
-    	float width = 0;
-    	if (view.mLabelLayout != null) {
-    		width = Layout.getDesiredWidth(view.mLabelLayout.getText(), view.mLabelLayout.getPaint());
-    	}
-    	return width;
-    }
-    
-    public static float getLabelLeft(ChartSweepView view) {
-    	float left = 0;
-    	
-    	/*
-	     * Calculate the label offset so that the flag is drawn in the direction of the other sweep.
-	     */
-    	if (view.mLabelLayout != null) {
-	    	if (view.mValidAfterDynamic != null) {
-	        	// There is a sweep to the left of this sweep.
-	        	left = view.mContentOffset.left - view.mLabelLayout.getWidth() + view.mSweepPadding.left + 4;
-	        	
-	        } else if (view.mValidBeforeDynamic != null) {
-	        	// There is a sweep to the right of this sweep.
-	        	left = view.mContentOffset.left + view.mSweepPadding.left;
-	        	
-	        } else {
-	        	// Center the label.
-	        	left = (view.getWidth() - view.mLabelLayout.getWidth()) / 2;
-	        }
-    	}
-    	
-    	return left;
-    }
-    
-    public static float getLabelRight(ChartSweepView view) {
-    	float right = getLabelLeft(view);
-    	
-    	if (view.mLabelLayout != null) {
-    		right += view.mLabelLayout.getWidth();
-    	}
-    	
-    	return right;
-    }
 
-}
\ No newline at end of file
+}
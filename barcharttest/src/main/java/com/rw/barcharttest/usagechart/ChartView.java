@@ -20,13 +20,19 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Rect;
 import android.util.AttributeSet;
+import android.view.GestureDetector;
 import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.ViewDebug;
 import android.widget.FrameLayout;
+import android.widget.OverScroller;
 
 import com.rw.barcharttest.R;
 
+import java.util.Arrays;
+
 /**
  * Container for two-dimensional chart, drawn with a combination of
  * {@link ChartGridView}, {@link ChartBarGraphView} and {@link ChartSweepView}
@@ -34,18 +40,41 @@ import com.rw.barcharttest.R;
  * and screen coordinates.
  */
 public class ChartView extends FrameLayout {
-    // TODO: extend something that supports two-dimensional scrolling
     private static final int SWEEP_GRAVITY = Gravity.TOP | Gravity.START;
 
     ChartAxis mHoriz;
     ChartAxis mVert;
 
+    /*
+     * Horizontal viewport in raw axis values.  Panning and zooming move the viewport
+     * within [mViewportMin, mViewportMax] and push it into mHoriz, so children only
+     * ever render the visible window.
+     */
+    long mViewportStart;
+    long mViewportEnd;
+    long mViewportMin = 0;
+    long mViewportMax = Long.MAX_VALUE;
+    private long mMinViewportSpan = 1;
+
+    private boolean mViewportGesturesEnabled;
+    private final GestureDetector mGestureDetector;
+    private final ScaleGestureDetector mScaleDetector;
+    private final OverScroller mScroller;
+    private boolean mFlinging;
+
     @ViewDebug.ExportedProperty
     private int mOptimalWidth = -1;
     private float mOptimalWidthWeight = 0;
 
     private Rect mContent = new Rect();
 
+    // Scratch rects reused by every layout pass.
+    private final Rect mParentRect = new Rect();
+    private final Rect mChildRect = new Rect();
+
+    /** Sweeps along one axis, sorted by position, reused by each label pass. */
+    private ChartSweepView[] mLabelSweeps = new ChartSweepView[4];
+
     public ChartView(Context context) {
         this(context, null, 0);
     }
@@ -65,6 +94,10 @@ public class ChartView extends FrameLayout {
 
         setClipToPadding(false);
         setClipChildren(false);
+
+        mGestureDetector = new GestureDetector(context, mGestureListener);
+        mScaleDetector = new ScaleGestureDetector(context, mScaleListener);
+        mScroller = new OverScroller(context);
     }
 
     void init(ChartAxis horiz, ChartAxis vert) {
@@ -72,6 +105,160 @@ public class ChartView extends FrameLayout {
         mVert = Preconditions.checkNotNull(vert, "missing vert");
     }
 
+    /**
+     * Allow the user to pan, fling and pinch-zoom the horizontal viewport.
+     */
+    public void setViewportGesturesEnabled(boolean enabled) {
+        mViewportGesturesEnabled = enabled;
+        if (!enabled) {
+            mScroller.forceFinished(true);
+        }
+    }
+
+    /**
+     * Set the shortest span the viewport can be zoomed in to.
+     */
+    public void setMinViewportSpan(long span) {
+        mMinViewportSpan = Math.max(span, 1);
+    }
+
+    /**
+     * Move the viewport, keeping it within its limits, and notify
+     * {@link #onViewportChanged(long, long)} when it actually changed.
+     */
+    protected void setViewport(long start, long end) {
+        final long limit = mViewportMax - mViewportMin;
+        long span = MathUtils.constrain(end - start, Math.min(mMinViewportSpan, limit), limit);
+        start = MathUtils.constrain(start, mViewportMin, mViewportMax - span);
+        end = start + span;
+
+        if (start != mViewportStart || end != mViewportEnd) {
+            mViewportStart = start;
+            mViewportEnd = end;
+            onViewportChanged(start, end);
+        }
+    }
+
+    /**
+     * Called whenever a gesture moves the viewport.  By default this only updates
+     * {@link #mHoriz}; subclasses should push the new bounds to their children.
+     */
+    protected void onViewportChanged(long start, long end) {
+        mHoriz.setBounds(start, end);
+        for (int i = 0; i < getChildCount(); i++) {
+            getChildAt(i).invalidate();
+        }
+    }
+
+    /**
+     * Called once a pan, zoom or fling comes to rest.
+     */
+    protected void onViewportSettled() {
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!mViewportGesturesEnabled) {
+            return super.onTouchEvent(event);
+        }
+
+        boolean handled = mScaleDetector.onTouchEvent(event);
+        if (!mScaleDetector.isInProgress()) {
+            handled |= mGestureDetector.onTouchEvent(event);
+        }
+
+        final int action = event.getActionMasked();
+        if ((action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)
+                && !mFlinging) {
+            onViewportSettled();
+        }
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void computeScroll() {
+        super.computeScroll();
+        if (!mFlinging) {
+            return;
+        }
+
+        if (mScroller.computeScrollOffset()) {
+            final long span = mViewportEnd - mViewportStart;
+            final long start = mViewportMin + pixelsToValueDelta(mScroller.getCurrX(), span);
+            setViewport(start, start + span);
+            postInvalidateOnAnimation();
+        } else {
+            mFlinging = false;
+            onViewportSettled();
+        }
+    }
+
+    /**
+     * Convert a horizontal distance in pixels into a distance in axis values
+     * for a viewport of the given span.
+     */
+    private long pixelsToValueDelta(float pixels, long span) {
+        final int width = mContent.width();
+        return width > 0 ? (long) ((double) pixels * span / width) : 0;
+    }
+
+    private float valueDeltaToPixels(long delta, long span) {
+        return span > 0 ? (float) ((double) delta * mContent.width() / span) : 0;
+    }
+
+    private final GestureDetector.SimpleOnGestureListener mGestureListener =
+            new GestureDetector.SimpleOnGestureListener() {
+        @Override
+        public boolean onDown(MotionEvent e) {
+            mScroller.forceFinished(true);
+            mFlinging = false;
+            return true;
+        }
+
+        @Override
+        public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+            final long delta = pixelsToValueDelta(distanceX, mViewportEnd - mViewportStart);
+            setViewport(mViewportStart + delta, mViewportEnd + delta);
+            return true;
+        }
+
+        @Override
+        public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+            final long span = mViewportEnd - mViewportStart;
+            final int position = (int) valueDeltaToPixels(mViewportStart - mViewportMin, span);
+            final int range = (int) valueDeltaToPixels(mViewportMax - mViewportMin - span, span);
+            if (range <= 0) {
+                return false;
+            }
+
+            mScroller.forceFinished(true);
+            mScroller.fling(position, 0, (int) -velocityX, 0, 0, range, 0, 0);
+            mFlinging = true;
+            postInvalidateOnAnimation();
+            return true;
+        }
+    };
+
+    private final ScaleGestureDetector.SimpleOnScaleGestureListener mScaleListener =
+            new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            final long start = mViewportStart;
+            final long span = mViewportEnd - start;
+            if (span <= 0) {
+                return false;
+            }
+
+            // Zoom around the focal point so the value under the fingers stays put.
+            final long focus = mHoriz.convertToValue(detector.getFocusX() - mContent.left);
+            final double newSpan = span / detector.getScaleFactor();
+            final long newStart = focus - (long) ((focus - start) * (newSpan / span));
+            setViewport(newStart, newStart + (long) newSpan);
+            return true;
+        }
+    };
+
     public void setOptimalWidth(int optimalWidth, float optimalWidthWeight) {
         mOptimalWidth = optimalWidth;
         mOptimalWidthWeight = optimalWidthWeight;
@@ -97,12 +284,12 @@ public class ChartView extends FrameLayout {
         final int width = mContent.width();
         final int height = mContent.height();
 
-        // no scrolling yet, so tell dimensions to fill exactly
+        // scrolling happens through the axis bounds, so tell dimensions to fill exactly
         mHoriz.setSize(width);
         mVert.setSize(height);
 
-        final Rect parentRect = new Rect();
-        final Rect childRect = new Rect();
+        final Rect parentRect = mParentRect;
+        final Rect childRect = mChildRect;
 
         for (int i = 0; i < getChildCount(); i++) {
             final View child = getChildAt(i);
@@ -115,7 +302,6 @@ public class ChartView extends FrameLayout {
 				child.layout(childRect.left, childRect.top, childRect.right, childRect.bottom);
 			} else {
 				// series are always laid out to fill entire graph area
-				// TODO: handle scrolling for series larger than content area
 				Gravity.apply(params.gravity, width, height, parentRect, childRect);
 				child.layout(childRect.left, childRect.top, childRect.right, childRect.bottom);
 			}
@@ -123,13 +309,95 @@ public class ChartView extends FrameLayout {
     }
 
     protected void layoutSweep(ChartSweepView sweep) {
-        final Rect parentRect = new Rect(mContent);
-        final Rect childRect = new Rect();
+        final Rect parentRect = mParentRect;
+        final Rect childRect = mChildRect;
+        parentRect.set(mContent);
 
         layoutSweep(sweep, parentRect, childRect);
         sweep.layout(childRect.left, childRect.top, childRect.right, childRect.bottom);
     }
 
+    /**
+     * Place the labels of every sweep in a single pass per axis: reset each label to
+     * its unpushed position, then walk neighboring pairs in order along the axis and
+     * split any overlap between them.  Nothing cascades back into the sweeps, so the
+     * cost is bounded by the number of sweeps however many of them there are.
+     */
+    void layoutSweepLabels() {
+        layoutSweepLabels(ChartSweepView.HORIZONTAL);
+        layoutSweepLabels(ChartSweepView.VERTICAL);
+    }
+
+    /**
+     * Place the labels of the sweeps following the given axis only, for a sweep
+     * whose label moved without changing size.
+     */
+    void layoutSweepLabels(int followAxis) {
+        final int count = collectLabelSweeps(followAxis);
+        final ChartSweepView[] sweeps = mLabelSweeps;
+
+        for (int i = 0; i < count; i++) {
+            final ChartSweepView sweep = sweeps[i];
+            final ChartSweepView before = i > 0 && sweep.isNeighbor(sweeps[i - 1])
+                    ? sweeps[i - 1] : null;
+            final ChartSweepView after = i + 1 < count && sweep.isNeighbor(sweeps[i + 1])
+                    ? sweeps[i + 1] : null;
+            sweep.resetLabelPlacement(before, after);
+        }
+
+        for (int i = 0; i + 1 < count; i++) {
+            final ChartSweepView first = sweeps[i];
+            final ChartSweepView second = sweeps[i + 1];
+            if (!first.isNeighbor(second)) continue;
+
+            final float margin = Math.max(first.getLabelMargin(), second.getLabelMargin());
+            final float overlap = first.getPendingLabelEnd() + margin
+                    - second.getPendingLabelStart();
+            if (overlap > 0) {
+                first.offsetPendingLabel(-overlap / 2);
+                second.offsetPendingLabel(overlap / 2);
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            sweeps[i].applyLabelPlacement();
+            sweeps[i] = null;
+        }
+    }
+
+    /**
+     * Gather the labelled sweeps following the given axis into {@link #mLabelSweeps},
+     * sorted by position along it, and return how many there are.
+     */
+    private int collectLabelSweeps(int followAxis) {
+        int count = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (!(child instanceof ChartSweepView)) continue;
+
+            final ChartSweepView sweep = (ChartSweepView) child;
+            if (sweep.getFollowAxis() != followAxis || !sweep.hasLabel()) continue;
+
+            if (count == mLabelSweeps.length) {
+                mLabelSweeps = Arrays.copyOf(mLabelSweeps, mLabelSweeps.length * 2);
+            }
+
+            // insertion sort; there are only ever a handful of sweeps
+            final float position = getSweepPosition(sweep, followAxis);
+            int j = count++;
+            while (j > 0 && getSweepPosition(mLabelSweeps[j - 1], followAxis) > position) {
+                mLabelSweeps[j] = mLabelSweeps[j - 1];
+                j--;
+            }
+            mLabelSweeps[j] = sweep;
+        }
+        return count;
+    }
+
+    private static float getSweepPosition(ChartSweepView sweep, int followAxis) {
+        return followAxis == ChartSweepView.VERTICAL ? sweep.getY() : sweep.getX();
+    }
+
     protected void layoutSweep(ChartSweep sweep, Rect parentRect, Rect childRect) {
         final Rect sweepMargins = sweep.getMargins();
 
@@ -16,7 +16,7 @@
 
 package com.rw.barcharttest.usagechart;
 
-import java.util.Objects;
+import java.text.DecimalFormatSymbols;
 
 import android.content.res.Resources;
 import android.text.Spannable;
@@ -29,12 +29,18 @@ public class DataAxis implements ChartAxis, ChartConstants {
     private long mMin;
     private long mMax;
     private float mSize;
+    private int mVersion;
+
+    /** Tick points for the axis state stamped in {@link #mTickVersion}. */
+    private float[] mTicks = new float[16];
+    private int mTickCount;
+    private int mTickVersion = -1;
 
     private static final boolean LOG_SCALE = false;
 
     @Override
-    public int hashCode() {
-        return Objects.hash(mMin, mMax, mSize);
+    public int getVersion() {
+        return mVersion;
     }
 
     @Override
@@ -42,6 +48,7 @@ public class DataAxis implements ChartAxis, ChartConstants {
         if (mMin != min || mMax != max) {
             mMin = min;
             mMax = max;
+            mVersion++;
             return true;
         } else {
             return false;
@@ -52,6 +59,7 @@ public class DataAxis implements ChartAxis, ChartConstants {
     public boolean setSize(float size) {
         if (mSize != size) {
             mSize = size;
+            mVersion++;
             return true;
         } else {
             return false;
@@ -71,6 +79,21 @@ public class DataAxis implements ChartAxis, ChartConstants {
         }
     }
 
+    @Override
+    public void convertToPoints(long[] values, int from, int to, float[] out) {
+        if (LOG_SCALE) {
+            for (int i = from; i < to; i++) {
+                out[i - from] = convertToPoint(values[i]);
+            }
+        } else {
+            final long min = mMin;
+            final double scale = (double) mSize / (mMax - mMin);
+            for (int i = from; i < to; i++) {
+                out[i - from] = (float) ((values[i] - min) * scale);
+            }
+        }
+    }
+
     @Override
     public long convertToValue(float point) {
         if (LOG_SCALE) {
@@ -86,55 +109,162 @@ public class DataAxis implements ChartAxis, ChartConstants {
     private static final Object sSpanSize = new Object();
     private static final Object sSpanUnit = new Object();
 
+    /*
+     * Size text of recently shown labels, keyed by getLabelBucket(), and evicted
+     * least recently used first.  Dragging a sweep back and forth
+     * revisits the same handful of values, so most labels never format at all.
+     */
+    private static final int LABEL_CACHE_SIZE = 16;
+    private final long[] mLabelKeys = new long[LABEL_CACHE_SIZE];
+    private final String[] mLabelTexts = new String[LABEL_CACHE_SIZE];
+    private final int[] mLabelUses = new int[LABEL_CACHE_SIZE];
+    private int mLabelClock;
+
+    private final char[] mDigits = new char[24];
+    private final char mDecimalSeparator =
+            DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+    private Resources mUnitRes;
+    private CharSequence mUnitMb;
+    private CharSequence mUnitGb;
+
     @Override
     public long buildLabel(Resources res, SpannableStringBuilder builder, long value) {
+        if (mUnitRes != res) {
+//            mUnitMb = res.getText(com.android.internal.R.string.megabyteShort);
+//            mUnitGb = res.getText(com.android.internal.R.string.gigabyteShort);
+            mUnitMb = res.getString(R.string.mb);
+            mUnitGb = res.getString(R.string.gb);
+            mUnitRes = res;
+        }
 
-        final CharSequence unit;
-        final long unitFactor;
-        if (value < 1000 * MB_IN_BYTES) {
-//            unit = res.getText(com.android.internal.R.string.megabyteShort);
-        	unit = res.getString(R.string.mb);
-            unitFactor = MB_IN_BYTES;
-        } else {
-//            unit = res.getText(com.android.internal.R.string.gigabyteShort);
-            unit = res.getString(R.string.gb);
-            unitFactor = GB_IN_BYTES;
+        final long key = getLabelBucket(value);
+        setText(builder, sSpanSize, getSizeText(key), "^1");
+        setText(builder, sSpanUnit, isGigabytes(key) ? mUnitGb : mUnitMb, "^2");
+
+        return roundLabelValue(value);
+    }
+
+    @Override
+    public long roundLabelValue(long value) {
+        final long key = getLabelBucket(value);
+        final long unitFactor = isGigabytes(key) ? GB_IN_BYTES : MB_IN_BYTES;
+        return unitFactor * getScaled(key) / (getDecimals(key) == 1 ? 10 : 1);
+    }
+
+    /**
+     * Return the rounded display value packed as {@code scaled << 2 | unit << 1 | decimals},
+     * where the label shows {@code scaled / 10^decimals} megabytes or gigabytes.
+     */
+    @Override
+    public long getLabelBucket(long value) {
+        final boolean gigabytes = value >= 1000 * MB_IN_BYTES;
+        final long unitFactor = gigabytes ? GB_IN_BYTES : MB_IN_BYTES;
+
+        // Round in fixed point: tenths of a unit below 10 units, whole units above.
+        final int decimals = value < 10 * unitFactor ? 1 : 0;
+        final long scaled = roundDiv(value * (decimals == 1 ? 10 : 1), unitFactor);
+        return (scaled << 2) | (gigabytes ? 2 : 0) | decimals;
+    }
+
+    private static long getScaled(long key) {
+        return key >> 2;
+    }
+
+    private static boolean isGigabytes(long key) {
+        return (key & 2) != 0;
+    }
+
+    private static int getDecimals(long key) {
+        return (int) (key & 1);
+    }
+
+    /**
+     * Return the size text for a label bucket, formatting it only when it isn't
+     * already cached.
+     */
+    private String getSizeText(long key) {
+        int slot = 0;
+        for (int i = 0; i < LABEL_CACHE_SIZE; i++) {
+            if (mLabelTexts[i] != null && mLabelKeys[i] == key) {
+                mLabelUses[i] = ++mLabelClock;
+                return mLabelTexts[i];
+            }
+            if (mLabelUses[i] < mLabelUses[slot]) {
+                slot = i;
+            }
         }
 
-        final double result = (double) value / unitFactor;
-        final double resultRounded;
-        final CharSequence size;
+        final String text = formatFixed(getScaled(key), getDecimals(key));
+        mLabelKeys[slot] = key;
+        mLabelTexts[slot] = text;
+        mLabelUses[slot] = ++mLabelClock;
+        return text;
+    }
+
+    /**
+     * Format {@code scaled / 10^decimals} without going through a Formatter.
+     */
+    private String formatFixed(long scaled, int decimals) {
+        final char[] digits = mDigits;
+        final boolean negative = scaled < 0;
+        long remaining = Math.abs(scaled);
 
-        if (result < 10) {
-            size = String.format("%.1f", result);
-            resultRounded = (unitFactor * Math.round(result * 10)) / 10;
-        } else {
-            size = String.format("%.0f", result);
-            resultRounded = unitFactor * Math.round(result);
+        int start = digits.length;
+        for (int i = 0; i < decimals; i++) {
+            digits[--start] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        if (decimals > 0) {
+            digits[--start] = mDecimalSeparator;
+        }
+        do {
+            digits[--start] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        if (negative) {
+            digits[--start] = '-';
         }
 
-        setText(builder, sSpanSize, size, "^1");
-        setText(builder, sSpanUnit, unit, "^2");
+        return new String(digits, start, digits.length - start);
+    }
 
-        return (long) resultRounded;
+    /**
+     * Divide rounding half up, matching {@link Math#round(double)}.
+     */
+    private static long roundDiv(long dividend, long divisor) {
+        final long doubled = dividend * 2 + divisor;
+        final long quotient = doubled / (divisor * 2);
+        return (doubled % (divisor * 2) < 0) ? quotient - 1 : quotient;
     }
 
     @Override
-    public float[] getTickPoints() {
+    public int getTickPoints(float[] out) {
+        if (mTickVersion != mVersion) {
+            buildTicks();
+            mTickVersion = mVersion;
+        }
+        System.arraycopy(mTicks, 0, out, 0, Math.min(mTickCount, out.length));
+        return mTickCount;
+    }
+
+    private void buildTicks() {
         final long range = mMax - mMin;
 
         // target about 16 ticks on screen, rounded to nearest power of 2
 //        final long tickJump = roundUpToPowerOfTwo(range / 16);
         final long tickJump = roundUpToPowerOfTwo(range / 8); // Show about 8 bars on screen.
         final int tickCount = (int) (range / tickJump);
-        final float[] tickPoints = new float[tickCount];
+        if (mTicks.length < tickCount) {
+            mTicks = new float[tickCount];
+        }
         long value = mMin;
-        for (int i = 0; i < tickPoints.length; i++) {
-            tickPoints[i] = convertToPoint(value);
+        for (int i = 0; i < tickCount; i++) {
+            mTicks[i] = convertToPoint(value);
             value += tickJump;
         }
 
-        return tickPoints;
+        mTickCount = tickCount;
     }
 
     @Override
@@ -159,10 +289,26 @@ public class DataAxis implements ChartAxis, ChartConstants {
             if (start >= 0 && end < bootstrap.length()) {
                 builder.setSpan(key, start, end, Spannable.SPAN_INCLUSIVE_INCLUSIVE);
             }
+        } else if (regionEquals(builder, start, end, text)) {
+            // rounded value didn't change, so leave the label and its layout alone
+            return;
         }
         builder.replace(start, end, text);
     }
     
+    private static boolean regionEquals(
+            CharSequence builder, int start, int end, CharSequence text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (builder.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static long roundUpToPowerOfTwo(long i) {
         // NOTE: borrowed from Hashtable.roundUpToPowerOfTwo()
 
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.barcharttest.usagechart;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import android.text.format.DateUtils;
+
+/**
+ * Table of local midnights indexed by epoch day, so walking days, weeks and
+ * months is a table lookup rather than a calendar normalization per step.  The
+ * table is built with a {@link Calendar} once and grown on demand; each version
+ * is immutable, so lookups are safe from any thread without locking.
+ *
+ * Epoch days count local calendar days, with day 0 being 1970-01-01.  Call
+ * {@link #reset()} when the default time zone changes; a table that has to
+ * grow is also rebuilt from scratch if the default zone no longer matches it.
+ */
+final class DayBoundaries {
+    private static final long DAY = DateUtils.DAY_IN_MILLIS;
+
+    /** Extra days built on each side whenever the table grows. */
+    private static final int GROW_DAYS = 366;
+
+    private static final class Table {
+        final TimeZone zone;
+        final int firstDay;
+        final long[] starts;
+
+        Table(TimeZone zone, int firstDay, long[] starts) {
+            this.zone = zone;
+            this.firstDay = firstDay;
+            this.starts = starts;
+        }
+
+        boolean covers(int fromDay, int toDay) {
+            return fromDay >= firstDay && toDay < firstDay + starts.length;
+        }
+    }
+
+    private static volatile Table sTable;
+
+    private DayBoundaries() {
+    }
+
+    /**
+     * Drop the table so it is rebuilt for the current default time zone.
+     * {@link ChartDataUsageView} calls this when the system time zone changes.
+     */
+    static void reset() {
+        sTable = null;
+    }
+
+    /**
+     * Return the time of the local midnight that starts the given epoch day.
+     */
+    static long getDayStart(int epochDay) {
+        final Table table = ensure(epochDay, epochDay);
+        return table.starts[epochDay - table.firstDay];
+    }
+
+    /**
+     * Return the epoch day of the local day containing the given time.
+     */
+    static int getEpochDay(long time) {
+        Table table = sTable;
+        final TimeZone zone = table != null ? table.zone : TimeZone.getDefault();
+
+        // The zone offset gets within a day; the table settles any DST edge.
+        int day = (int) floorDiv(time + zone.getOffset(time), DAY);
+        table = ensure(day - 1, day + 1);
+        final long[] starts = table.starts;
+        while (starts[day - table.firstDay] > time) {
+            day--;
+        }
+        while (starts[day + 1 - table.firstDay] <= time) {
+            day++;
+        }
+        return day;
+    }
+
+    /**
+     * Return the day of the week of the given epoch day, as one of the
+     * {@link Calendar#SUNDAY} through {@link Calendar#SATURDAY} constants.
+     */
+    static int getDayOfWeek(int epochDay) {
+        // 1970-01-01 was a Thursday
+        return (int) floorMod(epochDay + 4, 7) + Calendar.SUNDAY;
+    }
+
+    /**
+     * Return the epoch day of the given civil date, with the month counted from
+     * zero like {@link Calendar#MONTH}.  Pure arithmetic, no calendar involved.
+     */
+    static int getEpochDay(int year, int month, int dayOfMonth) {
+        // days_from_civil, with years starting in March so leap days come last
+        final int m = month + 1;
+        final int y = m <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + dayOfMonth - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Return the civil year of the given epoch day.
+     */
+    static int getYear(int epochDay) {
+        final int z = epochDay + 719468;
+        final int era = (z >= 0 ? z : z - 146096) / 146097;
+        final int dayOfEra = z - era * 146097;
+        final int yearOfEra = yearOfEra(dayOfEra);
+        final int year = yearOfEra + era * 400;
+        return marchMonth(dayOfEra, yearOfEra) >= 10 ? year + 1 : year;
+    }
+
+    /**
+     * Return the civil month of the given epoch day, counted from zero like
+     * {@link Calendar#MONTH}.
+     */
+    static int getMonth(int epochDay) {
+        final int z = epochDay + 719468;
+        final int era = (z >= 0 ? z : z - 146096) / 146097;
+        final int dayOfEra = z - era * 146097;
+        final int mp = marchMonth(dayOfEra, yearOfEra(dayOfEra));
+        return mp < 10 ? mp + 2 : mp - 10;
+    }
+
+    private static int yearOfEra(int dayOfEra) {
+        return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    }
+
+    /** Month within a year starting in March, from 0 for March to 11 for February. */
+    private static int marchMonth(int dayOfEra, int yearOfEra) {
+        final int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        return (5 * dayOfYear + 2) / 153;
+    }
+
+    static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    private static Table ensure(int fromDay, int toDay) {
+        final Table table = sTable;
+        if (table != null && table.covers(fromDay, toDay)) {
+            return table;
+        }
+
+        synchronized (DayBoundaries.class) {
+            Table current = sTable;
+            if (current != null && current.covers(fromDay, toDay)) {
+                return current;
+            }
+
+            // Looking up the default zone clones it, so only check while growing.
+            final TimeZone zone = TimeZone.getDefault();
+            if (current != null && !current.zone.getID().equals(zone.getID())) {
+                current = null;
+            }
+
+            int first = fromDay - GROW_DAYS;
+            int last = toDay + GROW_DAYS;
+            if (current != null) {
+                first = Math.min(first, current.firstDay);
+                last = Math.max(last, current.firstDay + current.starts.length - 1);
+            }
+
+            current = new Table(zone, first, buildStarts(zone, first, last));
+            sTable = current;
+            return current;
+        }
+    }
+
+    private static long[] buildStarts(TimeZone zone, int firstDay, int lastDay) {
+        final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(firstDay * DAY);
+
+        final Calendar local = Calendar.getInstance(zone);
+
+        // Step the civil date in UTC, which has no DST, and resolve each midnight
+        // locally, so a midnight skipped by DST doesn't shift the days after it.
+        final long[] starts = new long[lastDay - firstDay + 1];
+        for (int i = 0; i < starts.length; i++) {
+            local.clear();
+            local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH),
+                    utc.get(Calendar.DAY_OF_MONTH), 0, 0, 0);
+            starts[i] = local.getTimeInMillis();
+            utc.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.barcharttest.usagechart;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import android.text.format.DateUtils;
+
+/**
+ * Formats times as local day labels such as "Mar 07", caching the label of
+ * each day so repeated requests for the same day, such as every drag event
+ * of a sweep, never touch {@link SimpleDateFormat}.
+ *
+ * Safe to call from any thread: the cache is direct mapped by epoch day and
+ * holds immutable entries, so hits take no lock and don't allocate.  Only a
+ * miss formats, under a lock on the shared format.
+ */
+public final class DayLabelFormatter {
+    private static final long DAY = DateUtils.DAY_IN_MILLIS;
+    private static final String DEFAULT_PATTERN = "MMM dd";
+
+    /** Number of cached days; a power of two covering over a year of labels. */
+    private static final int CACHE_SIZE = 512;
+
+    private static final DayLabelFormatter sInstance = new DayLabelFormatter(DEFAULT_PATTERN);
+
+    private static final class Entry {
+        final int epochDay;
+        final String label;
+
+        Entry(int epochDay, String label) {
+            this.epochDay = epochDay;
+            this.label = label;
+        }
+    }
+
+    private final SimpleDateFormat mFormat;
+    private final Entry[] mEntries = new Entry[CACHE_SIZE];
+
+    public DayLabelFormatter(String pattern) {
+        mFormat = new SimpleDateFormat(pattern);
+        // Epoch days are civil dates, so formatting their UTC midnight gives the
+        // same label in any zone and cached labels survive a zone change.
+        mFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Return the shared formatter for "MMM dd" day labels.
+     */
+    public static DayLabelFormatter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Return the label of the local day containing the given time.
+     */
+    public String format(long time) {
+        return formatDay(DayBoundaries.getEpochDay(time));
+    }
+
+    /**
+     * Return the label of the given local epoch day.
+     */
+    public String formatDay(int epochDay) {
+        final int slot = epochDay & (CACHE_SIZE - 1);
+        final Entry entry = mEntries[slot];
+        if (entry != null && entry.epochDay == epochDay) {
+            return entry.label;
+        }
+
+        final String label;
+        synchronized (mFormat) {
+            label = mFormat.format(epochDay * DAY);
+        }
+        // racing writers only ever replace one complete entry with another
+        mEntries[slot] = new Entry(epochDay, label);
+        return label;
+    }
+
+    /**
+     * Fill the cache with the labels of every day between the given times, for
+     * instance from a loader thread before the chart shows a new range.
+     */
+    public void prefetch(long start, long end) {
+        final int last = DayBoundaries.getEpochDay(end);
+        for (int day = DayBoundaries.getEpochDay(start); day <= last; day++) {
+            formatDay(day);
+        }
+    }
+}
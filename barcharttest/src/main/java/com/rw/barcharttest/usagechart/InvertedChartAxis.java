@@ -41,11 +41,26 @@ public class InvertedChartAxis implements ChartAxis {
         return mWrapped.setSize(size);
     }
 
+    @Override
+    public int getVersion() {
+        // mSize always follows the wrapped size, so its stamp covers both
+        return mWrapped.getVersion();
+    }
+
     @Override
     public float convertToPoint(long value) {
         return mSize - mWrapped.convertToPoint(value);
     }
 
+    @Override
+    public void convertToPoints(long[] values, int from, int to, float[] out) {
+        mWrapped.convertToPoints(values, from, to, out);
+        final float size = mSize;
+        for (int i = 0, count = to - from; i < count; i++) {
+            out[i] = size - out[i];
+        }
+    }
+
     @Override
     public long convertToValue(float point) {
         return mWrapped.convertToValue(mSize - point);
@@ -57,12 +72,22 @@ public class InvertedChartAxis implements ChartAxis {
     }
 
     @Override
-    public float[] getTickPoints() {
-        final float[] points = mWrapped.getTickPoints();
-        for (int i = 0; i < points.length; i++) {
-            points[i] = mSize - points[i];
+    public long roundLabelValue(long value) {
+        return mWrapped.roundLabelValue(value);
+    }
+
+    @Override
+    public long getLabelBucket(long value) {
+        return mWrapped.getLabelBucket(value);
+    }
+
+    @Override
+    public int getTickPoints(float[] out) {
+        final int count = mWrapped.getTickPoints(out);
+        for (int i = 0, written = Math.min(count, out.length); i < written; i++) {
+            out[i] = mSize - out[i];
         }
-        return points;
+        return count;
     }
 
     @Override
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rw.barcharttest.usagechart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Read-only {@link ChartData} backed by a memory-mapped history file.  The
+ * file is a sequence of fixed-width records, each holding the date followed by
+ * the byte count as big-endian longs, ordered by date from oldest to newest.
+ * Only single series data can be stored.
+ * 
+ * Samples are read straight from the mapping, and so are the aggregates: the
+ * levels of the {@link ChartDataPyramid} live in a mapped index file next to
+ * the history, built on open when missing or stale.  Sums, extremes and zoomed
+ * out bars are answered from it, so the heap holds no per-sample state and
+ * histories larger than the heap can be shown.
+ */
+public class MappedChartData extends ChartData {
+
+	/** Size in bytes of a single record. */
+	public static final int RECORD_SIZE = 16;
+
+	private static final long INDEX_MAGIC = 0x5257434449445831L; // "RWCDIDX1"
+	private static final int HEADER_LONGS = 5;
+
+	private final LongBuffer records;
+	private final int count;
+	private final Pyramid pyramid;
+
+	/**
+	 * Map the given history, with its index in a file of the same name plus
+	 * ".idx".
+	 */
+	public MappedChartData(File file) throws IOException {
+		this(file, new File(file.getPath() + ".idx"));
+	}
+
+	/**
+	 * Map the given history, keeping its index in the given file.
+	 */
+	public MappedChartData(File file, File indexFile) throws IOException {
+		super(1);
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long length = channel.size();
+			// A single mapping can't exceed Integer.MAX_VALUE bytes.
+			if (length % RECORD_SIZE != 0 || length > Integer.MAX_VALUE) {
+				throw new IOException("Malformed history file " + file);
+			}
+
+			// The mapping stays valid after the channel is closed.
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			records = buffer.asLongBuffer();
+			count = (int) (length / RECORD_SIZE);
+		} finally {
+			raf.close();
+		}
+
+		if (count > 0) {
+			setStart(getDate(0));
+			setEnd(getDate(count - 1));
+		}
+
+		final long stamp = file.lastModified();
+		if (!isIndexCurrent(indexFile, stamp)) {
+			buildIndex(indexFile, stamp);
+		}
+		pyramid = mapIndex(indexFile);
+	}
+
+	/**
+	 * Write the samples of the given data in the format read by this class.
+	 * 
+	 * @param data
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void write(ChartData data, File file) throws IOException {
+		if (data.getSeriesCount() > 1) {
+			throw new IllegalArgumentException("Mapped chart data holds a single series");
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+
+			final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 512);
+			final int size = data.size();
+			for (int i = 0; i < size; i++) {
+				if (buffer.remaining() < RECORD_SIZE) {
+					flip(channel, buffer);
+				}
+				buffer.putLong(data.getDate(i));
+				buffer.putLong(data.getTotalBytes(i));
+			}
+			flip(channel, buffer);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void flip(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Number of buckets at each level of a pyramid over the given number of
+	 * entries, with counts[0] being the entries themselves.
+	 */
+	private static int[] getBucketCounts(int count) {
+		final int levels = 32 - Integer.numberOfLeadingZeros(Math.max(count, 1) - 1) + 1;
+		final int[] counts = new int[levels];
+		counts[0] = count;
+		for (int level = 1; level < levels; level++) {
+			counts[level] = (counts[level - 1] + 1) >>> 1;
+		}
+		return counts;
+	}
+
+	private static long getIndexLength(int[] counts) {
+		long length = HEADER_LONGS * 8L;
+		for (int level = 1; level < counts.length; level++) {
+			length += counts[level] * 24L;
+		}
+		return length;
+	}
+
+	/**
+	 * Cheap fingerprint of the records, so that a history rewritten within the
+	 * resolution of the file's modification time is still noticed.
+	 */
+	private long getFingerprint() {
+		return count > 0 ? getDate(0) ^ getTotalBytes(0) ^ getDate(count - 1)
+				^ getTotalBytes(count - 1) : 0;
+	}
+
+	private boolean isIndexCurrent(File indexFile, long stamp) throws IOException {
+		if (indexFile.length() != getIndexLength(getBucketCounts(count))) {
+			return false;
+		}
+		final RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			return raf.readLong() == INDEX_MAGIC
+					&& raf.readLong() == count
+					&& raf.readLong() == stamp
+					&& raf.readLong() == getFingerprint()
+					&& raf.readLong() == HEADER_LONGS;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Write the pyramid levels to the index file, each level folded from the
+	 * mapped level below it, so building takes no heap per sample.  The header
+	 * goes last, so an interrupted build is redone on the next open.
+	 */
+	private void buildIndex(File indexFile, long stamp) throws IOException {
+		final int[] counts = getBucketCounts(count);
+
+		final RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+		try {
+			final FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+			raf.setLength(getIndexLength(counts));
+
+			LongBuffer belowMax = null;
+			LongBuffer belowMin = null;
+			LongBuffer belowSum = null;
+			long offset = HEADER_LONGS * 8L;
+			for (int level = 1; level < counts.length; level++) {
+				final int buckets = counts[level];
+				final LongBuffer max = map(channel, FileChannel.MapMode.READ_WRITE, offset, buckets);
+				final LongBuffer min = map(channel, FileChannel.MapMode.READ_WRITE,
+						offset + buckets * 8L, buckets);
+				final LongBuffer sum = map(channel, FileChannel.MapMode.READ_WRITE,
+						offset + buckets * 16L, buckets);
+				offset += buckets * 24L;
+
+				final int belowCount = counts[level - 1];
+				for (int b = 0; b < buckets; b++) {
+					final int left = b * 2;
+					final int right = left + 1;
+					long bucketMax;
+					long bucketMin;
+					long bucketSum;
+					if (level == 1) {
+						bucketMax = bucketMin = bucketSum = getTotalBytes(left);
+						if (right < belowCount) {
+							final long value = getTotalBytes(right);
+							bucketMax = Math.max(bucketMax, value);
+							bucketMin = Math.min(bucketMin, value);
+							bucketSum += value;
+						}
+					} else {
+						bucketMax = belowMax.get(left);
+						bucketMin = belowMin.get(left);
+						bucketSum = belowSum.get(left);
+						if (right < belowCount) {
+							bucketMax = Math.max(bucketMax, belowMax.get(right));
+							bucketMin = Math.min(bucketMin, belowMin.get(right));
+							bucketSum += belowSum.get(right);
+						}
+					}
+					max.put(b, bucketMax);
+					min.put(b, bucketMin);
+					sum.put(b, bucketSum);
+				}
+				belowMax = max;
+				belowMin = min;
+				belowSum = sum;
+			}
+			channel.force(false);
+
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LONGS * 8);
+			header.putLong(INDEX_MAGIC);
+			header.putLong(count);
+			header.putLong(stamp);
+			header.putLong(getFingerprint());
+			header.putLong(HEADER_LONGS);
+			header.flip();
+			channel.position(0);
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+			channel.force(false);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private Pyramid mapIndex(File indexFile) throws IOException {
+		final int[] counts = getBucketCounts(count);
+		final LongBuffer[] maxes = new LongBuffer[counts.length];
+		final LongBuffer[] mins = new LongBuffer[counts.length];
+		final LongBuffer[] sums = new LongBuffer[counts.length];
+
+		final RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			final FileChannel channel = raf.getChannel();
+			long offset = HEADER_LONGS * 8L;
+			for (int level = 1; level < counts.length; level++) {
+				final int buckets = counts[level];
+				maxes[level] = map(channel, FileChannel.MapMode.READ_ONLY, offset, buckets);
+				mins[level] = map(channel, FileChannel.MapMode.READ_ONLY,
+						offset + buckets * 8L, buckets);
+				sums[level] = map(channel, FileChannel.MapMode.READ_ONLY,
+						offset + buckets * 16L, buckets);
+				offset += buckets * 24L;
+			}
+		} finally {
+			raf.close();
+		}
+		return new Pyramid(this, counts, maxes, mins, sums);
+	}
+
+	private static LongBuffer map(FileChannel channel, FileChannel.MapMode mode, long offset,
+			int longs) throws IOException {
+		return channel.map(mode, offset, longs * 8L).asLongBuffer();
+	}
+
+	/**
+	 * Pyramid whose levels are read from the mapped index file.
+	 */
+	private static final class Pyramid extends ChartDataPyramid {
+		private final int[] counts;
+		private final LongBuffer[] maxes;
+		private final LongBuffer[] mins;
+		private final LongBuffer[] sums;
+
+		Pyramid(ChartData data, int[] counts, LongBuffer[] maxes, LongBuffer[] mins,
+				LongBuffer[] sums) {
+			super(data, counts.length);
+			this.counts = counts;
+			this.maxes = maxes;
+			this.mins = mins;
+			this.sums = sums;
+		}
+
+		@Override
+		public int getBucketCount(int level) {
+			return counts[level];
+		}
+
+		@Override
+		public long getMax(int level, int bucket) {
+			return level == 0 ? super.getMax(0, bucket) : maxes[level].get(bucket);
+		}
+
+		@Override
+		public long getMin(int level, int bucket) {
+			return level == 0 ? super.getMin(0, bucket) : mins[level].get(bucket);
+		}
+
+		@Override
+		public long getSum(int level, int bucket) {
+			return level == 0 ? super.getSum(0, bucket) : sums[level].get(bucket);
+		}
+	}
+
+	@Override
+	public ChartDataPyramid getPyramid() {
+		return pyramid;
+	}
+
+	@Override
+	long sumRange(int from, int to) {
+		return pyramid.getRangeSum(from, to);
+	}
+
+	@Override
+	long maxRange(int from, int to) {
+		return pyramid.getRangeMax(from, to);
+	}
+
+	@Override
+	long minRange(int from, int to) {
+		return pyramid.getRangeMin(from, to);
+	}
+
+	@Override
+	public int size() {
+		return count;
+	}
+
+	@Override
+	public long getDate(int index) {
+		return records.get(index * 2);
+	}
+
+	@Override
+	public long getTotalBytes(int index) {
+		return records.get(index * 2 + 1);
+	}
+
+	@Override
+	public void addEntry(long date, long totalBytes) {
+		throw new UnsupportedOperationException("Mapped chart data is read-only");
+	}
+
+	@Override
+	public void addEntry(long date, long[] seriesBytes) {
+		throw new UnsupportedOperationException("Mapped chart data is read-only");
+	}
+
+	@Override
+	public void addEntries(List<Entry> entries) {
+		throw new UnsupportedOperationException("Mapped chart data is read-only");
+	}
+
+	@Override
+	public int upsert(long date, long totalBytes) {
+		throw new UnsupportedOperationException("Mapped chart data is read-only");
+	}
+
+	@Override
+	public int upsert(long date, long[] seriesBytes) {
+		throw new UnsupportedOperationException("Mapped chart data is read-only");
+	}
+
+}
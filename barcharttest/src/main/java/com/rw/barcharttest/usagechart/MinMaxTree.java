@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rw.barcharttest.usagechart;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree over a growing column of values that answers range min/max
+ * queries in O(log n) and accepts point updates in O(log n).
+ */
+final class MinMaxTree {
+
+	// Number of leaves, always a power of two.  Node i has children 2i and 2i + 1.
+	private int leaves;
+	private long[] max;
+	private long[] min;
+
+	MinMaxTree(int capacity) {
+		leaves = roundUpToPowerOfTwo(Math.max(capacity, 1));
+		max = new long[leaves * 2];
+		min = new long[leaves * 2];
+		Arrays.fill(max, Long.MIN_VALUE);
+		Arrays.fill(min, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Set the value at the given index, growing the tree if needed.
+	 */
+	void set(int index, long value) {
+		if (index >= leaves) {
+			grow(index + 1);
+		}
+
+		int i = index + leaves;
+		max[i] = value;
+		min[i] = value;
+		for (i >>>= 1; i > 0; i >>>= 1) {
+			max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+			min[i] = Math.min(min[2 * i], min[2 * i + 1]);
+		}
+	}
+
+	/**
+	 * @return The largest value in [from, to), or Long.MIN_VALUE when empty.
+	 */
+	long max(int from, int to) {
+		long result = Long.MIN_VALUE;
+		for (int l = from + leaves, r = to + leaves; l < r; l >>>= 1, r >>>= 1) {
+			if ((l & 1) != 0) result = Math.max(result, max[l++]);
+			if ((r & 1) != 0) result = Math.max(result, max[--r]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return The smallest value in [from, to), or Long.MAX_VALUE when empty.
+	 */
+	long min(int from, int to) {
+		long result = Long.MAX_VALUE;
+		for (int l = from + leaves, r = to + leaves; l < r; l >>>= 1, r >>>= 1) {
+			if ((l & 1) != 0) result = Math.min(result, min[l++]);
+			if ((r & 1) != 0) result = Math.min(result, min[--r]);
+		}
+		return result;
+	}
+
+	private void grow(int minCapacity) {
+		final int oldLeaves = leaves;
+		final long[] oldMax = max;
+		final long[] oldMin = min;
+
+		leaves = roundUpToPowerOfTwo(minCapacity);
+		max = new long[leaves * 2];
+		min = new long[leaves * 2];
+		Arrays.fill(max, Long.MIN_VALUE);
+		Arrays.fill(min, Long.MAX_VALUE);
+
+		// Copy the leaves over and rebuild the inner nodes bottom up.
+		System.arraycopy(oldMax, oldLeaves, max, leaves, oldLeaves);
+		System.arraycopy(oldMin, oldLeaves, min, leaves, oldLeaves);
+		for (int i = leaves - 1; i > 0; i--) {
+			max[i] = Math.max(max[2 * i], max[2 * i + 1]);
+			min[i] = Math.min(min[2 * i], min[2 * i + 1]);
+		}
+	}
+
+	private static int roundUpToPowerOfTwo(int i) {
+		return i <= 1 ? 1 : Integer.highestOneBit(i - 1) << 1;
+	}
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 Republic Wireless
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rw.barcharttest.usagechart;
+
+import java.util.HashMap;
+
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+/**
+ * Process wide cache of shaped label text, keyed by the text and the paint
+ * configuration it is drawn with.  Views share one {@link TextPaint} per
+ * {@link Style}, and labels seen before skip measuring and layout entirely.
+ *
+ * Views use the shared paint from the UI thread without locking, so
+ * {@link #getLayout} and {@link #getWidth} are for the UI thread only, and
+ * look cached text up through one reused key.  Other threads build labels
+ * ahead of time with {@link #prebuildLayout}, which shapes with its own copy
+ * of the paint, and the UI thread then picks them up without shaping text.
+ */
+final class TextLayoutCache {
+    private static final int MAX_LAYOUTS = 64;
+    private static final int MAX_WIDTHS = 32;
+
+    private static final TextLayoutCache sInstance = new TextLayoutCache();
+
+    /**
+     * Immutable paint configuration for label text.  Obtain through
+     * {@link TextLayoutCache#getStyle(int, float, float)} so equal configurations
+     * share the same paint.
+     */
+    static final class Style {
+        private final StyleKey mKey;
+        private final TextPaint mPaint;
+
+        private Style(StyleKey key) {
+            mKey = key;
+
+            mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            mPaint.density = key.mDensity;
+            mPaint.setColor(key.mColor);
+            mPaint.setTextSize(key.mTextSize);
+        }
+
+        /** Paint for this style; never modify it, since it is shared. */
+        TextPaint getPaint() {
+            return mPaint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Style && mKey.equals(((Style) o).mKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return mKey.hashCode();
+        }
+    }
+
+    /**
+     * Paint configuration a {@link Style} is looked up by.  Only the probe
+     * owned by the cache is ever changed, and only while holding its lock.
+     */
+    private static final class StyleKey {
+        private int mColor;
+        private float mTextSize;
+        private float mDensity;
+
+        StyleKey set(int color, float textSize, float density) {
+            mColor = color;
+            mTextSize = textSize;
+            mDensity = density;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StyleKey)) return false;
+            final StyleKey other = (StyleKey) o;
+            return mColor == other.mColor && mTextSize == other.mTextSize
+                    && mDensity == other.mDensity;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mColor;
+            result = 31 * result + Float.floatToIntBits(mTextSize);
+            result = 31 * result + Float.floatToIntBits(mDensity);
+            return result;
+        }
+    }
+
+    /**
+     * Text and style a layout or width is cached under.  Keys in the caches hold
+     * a copy of the text; the UI thread probe holds whatever it was last asked
+     * for, so its contents are compared rather than converted to a string.
+     */
+    private static final class Key {
+        private CharSequence mText;
+        private Style mStyle;
+        private int mHash;
+
+        Key set(CharSequence text, Style style) {
+            mText = text;
+            mStyle = style;
+
+            // same as String.hashCode(), so probes match the copies they find
+            int hash = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+            mHash = 31 * hash + style.hashCode();
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            if (mStyle != other.mStyle || mHash != other.mHash) return false;
+            final int n = mText.length();
+            if (other.mText.length() != n) return false;
+            for (int i = 0; i < n; i++) {
+                if (mText.charAt(i) != other.mText.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+
+    private final HashMap<StyleKey, Style> mStyles = new HashMap<StyleKey, Style>();
+    private final StyleKey mStyleProbe = new StyleKey();
+    private final LruCache<Key, Layout> mLayouts = new LruCache<Key, Layout>(MAX_LAYOUTS);
+    private final LruCache<Key, Float> mWidths = new LruCache<Key, Float>(MAX_WIDTHS);
+
+    /** Reused for lookups from the UI thread. */
+    private final Key mProbe = new Key();
+
+    private TextLayoutCache() {
+    }
+
+    static TextLayoutCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Return the shared style for the given paint configuration.  Styles seen
+     * before are found through a reused probe key, so lookups allocate nothing.
+     */
+    Style getStyle(int color, float textSize, float density) {
+        synchronized (mStyles) {
+            Style style = mStyles.get(mStyleProbe.set(color, textSize, density));
+            if (style == null) {
+                final StyleKey key = new StyleKey().set(color, textSize, density);
+                style = new Style(key);
+                mStyles.put(key, style);
+            }
+            return style;
+        }
+    }
+
+    /**
+     * Return a single line layout of the text, exactly as wide as the text.
+     * UI thread only.
+     */
+    Layout getLayout(CharSequence text, Style style) {
+        Layout layout = mLayouts.get(mProbe.set(text, style));
+        if (layout == null) {
+            layout = buildLayout(text, style.getPaint());
+            mLayouts.put(new Key().set(text.toString(), style), layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Build the layout {@link #getLayout} will return for the text, shaping it
+     * with a copy of the style's paint so the UI thread can keep drawing with
+     * the shared one.  Safe to call from any thread.
+     */
+    Layout prebuildLayout(CharSequence text, Style style) {
+        final Key key = new Key().set(text.toString(), style);
+        Layout layout = mLayouts.get(key);
+        if (layout == null) {
+            // the shared paint is never modified, so copying it is only a read
+            final TextPaint paint = new TextPaint();
+            paint.set(style.getPaint());
+            layout = buildLayout(text, paint);
+            mLayouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    private static Layout buildLayout(CharSequence text, TextPaint paint) {
+        return new StaticLayout(text, paint,
+                (int) Math.ceil(Layout.getDesiredWidth(text, paint)),
+                Layout.Alignment.ALIGN_NORMAL, 1.f, 0, true);
+    }
+
+    /**
+     * Return the width of the text when drawn with the style.  UI thread only.
+     */
+    float getWidth(CharSequence text, Style style) {
+        Float width = mWidths.get(mProbe.set(text, style));
+        if (width == null) {
+            width = style.getPaint().measureText(text, 0, text.length());
+            mWidths.put(new Key().set(text.toString(), style), width);
+        }
+        return width;
+    }
+}
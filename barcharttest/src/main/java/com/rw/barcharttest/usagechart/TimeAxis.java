@@ -16,32 +16,65 @@
 
 package com.rw.barcharttest.usagechart;
 
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Objects;
 
 import android.content.res.Resources;
 import android.text.SpannableStringBuilder;
 import android.text.format.DateUtils;
-import android.text.format.Time;
 
 public class TimeAxis implements ChartAxis {
-    private static final int FIRST_DAY_OF_WEEK = Calendar.getInstance().getFirstDayOfWeek() - 1;
-    private static final SimpleDateFormat formatter = new SimpleDateFormat("MMM dd");
+    private static final int FIRST_DAY_OF_WEEK = Calendar.getInstance().getFirstDayOfWeek();
+
+    /*
+     * Grid levels from finest to coarsest: days, weeks, months, quarters, then years
+     * in steps of YEAR_STEPS.  The finest level whose shortest interval is at least
+     * mMinTickSpacing pixels wide is used; a day can lose an hour to DST.
+     */
+    private static final long SHORTEST_DAY = DateUtils.DAY_IN_MILLIS - DateUtils.HOUR_IN_MILLIS;
+    private static final int SHORTEST_MONTH_DAYS = 28;
+    private static final int SHORTEST_QUARTER_DAYS = 90;
+    private static final int SHORTEST_YEAR_DAYS = 365;
+    private static final int[] YEAR_STEPS = { 1, 2, 5, 10, 20, 50, 100 };
     
     private long mMin;
     private long mMax;
     private float mSize;
+    private int mVersion;
+    private float mMinTickSpacing = 48;
+
+    /** Tick points for the axis state stamped in {@link #mTickVersion}. */
+    private float[] mTicks = new float[16];
+    private int mTickCount;
+    private int mTickVersion = -1;
 
     public TimeAxis() {
         final long currentTime = System.currentTimeMillis();
         setBounds(currentTime - DateUtils.DAY_IN_MILLIS * 30, currentTime);
     }
 
+    /**
+     * Set the minimum distance in pixels between grid ticks, which picks how
+     * coarse the ticks are for the current zoom.
+     */
+    public void setMinTickSpacing(float spacing) {
+        if (mMinTickSpacing != spacing) {
+            mMinTickSpacing = spacing;
+            mTickVersion = -1;
+        }
+    }
+
+    /**
+     * Move ticks and label buckets to the local days of a new default time zone,
+     * after {@link DayBoundaries#reset()}.
+     */
+    public void invalidateTimeZone() {
+        mVersion++;
+    }
+
     @Override
-    public int hashCode() {
-        return Objects.hash(mMin, mMax, mSize);
+    public int getVersion() {
+        return mVersion;
     }
 
     @Override
@@ -49,6 +82,7 @@ public class TimeAxis implements ChartAxis {
         if (mMin != min || mMax != max) {
             mMin = min;
             mMax = max;
+            mVersion++;
             return true;
         } else {
             return false;
@@ -59,6 +93,7 @@ public class TimeAxis implements ChartAxis {
     public boolean setSize(float size) {
         if (mSize != size) {
             mSize = size;
+            mVersion++;
             return true;
         } else {
             return false;
@@ -70,6 +105,15 @@ public class TimeAxis implements ChartAxis {
         return (mSize * (value - mMin)) / (mMax - mMin);
     }
 
+    @Override
+    public void convertToPoints(long[] values, int from, int to, float[] out) {
+        final long min = mMin;
+        final double scale = (double) mSize / (mMax - mMin);
+        for (int i = from; i < to; i++) {
+            out[i - from] = (float) ((values[i] - min) * scale);
+        }
+    }
+
     @Override
     public long convertToValue(float point) {
         return (long) (mMin + ((point * (mMax - mMin)) / mSize));
@@ -79,33 +123,102 @@ public class TimeAxis implements ChartAxis {
     public long buildLabel(Resources res, SpannableStringBuilder builder, long value) {
         // TODO: convert to better string
 //        builder.replace(0, builder.length(), Long.toString(value));
-    	builder.replace(0, builder.length(), formatter.format(value));
+    	builder.replace(0, builder.length(), DayLabelFormatter.getInstance().format(value));
     	return value;
     }
 
     @Override
-    public float[] getTickPoints() {
-        final float[] ticks = new float[32];
-        int i = 0;
-
-        // tick mark for first day of each week
-        final Time time = new Time();
-        time.set(mMax);
-        time.monthDay -= time.weekDay - FIRST_DAY_OF_WEEK;
-        time.hour = time.minute = time.second = 0;
-
-        time.normalize(true);
-        long timeMillis = time.toMillis(true);
-        while (timeMillis > mMin) {
-            if (timeMillis <= mMax) {
-                ticks[i++] = convertToPoint(timeMillis);
+    public long roundLabelValue(long value) {
+        return value;
+    }
+
+    @Override
+    public long getLabelBucket(long value) {
+        // labels only show the local day
+        return DayBoundaries.getEpochDay(value);
+    }
+
+    @Override
+    public int getTickPoints(float[] out) {
+        if (mTickVersion != mVersion) {
+            buildTicks();
+            mTickVersion = mVersion;
+        }
+        System.arraycopy(mTicks, 0, out, 0, Math.min(mTickCount, out.length));
+        return mTickCount;
+    }
+
+    /**
+     * Generate the ticks inside (mMin, mMax] for the coarsest level needed to keep
+     * them apart, stepping through the day table so the work is O(ticks).
+     */
+    private void buildTicks() {
+        mTickCount = 0;
+        if (mSize <= 0 || mMax <= mMin) {
+            return;
+        }
+
+        final double pixelsPerDay = (double) mSize * SHORTEST_DAY / (mMax - mMin);
+        final int firstDay = DayBoundaries.getEpochDay(mMin);
+        if (pixelsPerDay >= mMinTickSpacing) {
+            addDayTicks(firstDay, 1);
+        } else if (pixelsPerDay * 7 >= mMinTickSpacing) {
+            // tick mark for first day of each week
+            final int offset = (int) DayBoundaries.floorMod(
+                    FIRST_DAY_OF_WEEK - DayBoundaries.getDayOfWeek(firstDay), 7);
+            addDayTicks(firstDay + offset, 7);
+        } else if (pixelsPerDay * SHORTEST_MONTH_DAYS >= mMinTickSpacing) {
+            addMonthTicks(firstDay, 1);
+        } else if (pixelsPerDay * SHORTEST_QUARTER_DAYS >= mMinTickSpacing) {
+            addMonthTicks(firstDay, 3);
+        } else {
+            int years = YEAR_STEPS[YEAR_STEPS.length - 1];
+            for (int step : YEAR_STEPS) {
+                if (pixelsPerDay * SHORTEST_YEAR_DAYS * step >= mMinTickSpacing) {
+                    years = step;
+                    break;
+                }
+            }
+            addMonthTicks(firstDay, 12 * years);
+        }
+    }
+
+    /**
+     * Add a tick at the start of every step-th day from the given epoch day.
+     */
+    private void addDayTicks(int day, int step) {
+        for (long timeMillis = DayBoundaries.getDayStart(day); timeMillis <= mMax;
+                timeMillis = DayBoundaries.getDayStart(day += step)) {
+            if (timeMillis > mMin) {
+                addTick(timeMillis);
+            }
+        }
+    }
+
+    /**
+     * Add a tick at the start of every step-th month from the one holding the given
+     * epoch day, aligned so quarters and years start on their calendar boundaries.
+     */
+    private void addMonthTicks(int firstDay, int step) {
+        int month = DayBoundaries.getYear(firstDay) * 12 + DayBoundaries.getMonth(firstDay);
+        month -= (int) DayBoundaries.floorMod(month, step);
+        for (;; month += step) {
+            final int day = DayBoundaries.getEpochDay(month / 12, month % 12, 1);
+            final long timeMillis = DayBoundaries.getDayStart(day);
+            if (timeMillis > mMax) {
+                break;
+            }
+            if (timeMillis > mMin) {
+                addTick(timeMillis);
             }
-            time.monthDay -= 7;
-            time.normalize(true);
-            timeMillis = time.toMillis(true);
         }
+    }
 
-        return Arrays.copyOf(ticks, i);
+    private void addTick(long timeMillis) {
+        if (mTickCount == mTicks.length) {
+            mTicks = Arrays.copyOf(mTicks, mTickCount * 2);
+        }
+        mTicks[mTickCount++] = convertToPoint(timeMillis);
     }
 
     @Override